@@ -0,0 +1,57 @@
+package org.crayne.repack.benchmark;
+
+import org.crayne.repack.conversion.PackWorkspace;
+import org.crayne.repack.conversion.cit.CITPropertyFile;
+import org.crayne.repack.conversion.util.ItemExpansionCache;
+import org.crayne.repack.core.PackWorkspaceBuilder;
+import org.crayne.repack.core.single.predicate.PackMatchPredicate;
+import org.crayne.repack.util.logging.Logger;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CITBenchmark {
+
+    @Param({"SMALL", "MEDIUM", "HUGE"})
+    public Fixture fixture;
+
+    private Logger logger;
+    private List<PackMatchPredicate> matches;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        logger = Fixture.quietLogger();
+        final File root = fixture.create();
+        try {
+            final PackWorkspace workspace = new PackWorkspaceBuilder(logger).setup(root).orElseThrow();
+            matches = workspace.packFiles()
+                    .stream()
+                    .flatMap(p -> p.matches().stream())
+                    .filter(p -> p instanceof PackMatchPredicate)
+                    .map(p -> (PackMatchPredicate) p)
+                    .toList();
+        } finally {
+            Fixture.delete(root);
+        }
+    }
+
+    // a fresh expansion cache per invocation, like every compile gets
+    @Benchmark
+    public void generate(final Blackhole blackhole) {
+        final ItemExpansionCache items = ItemExpansionCache.forCompile();
+        for (final PackMatchPredicate match : matches) {
+            for (final CITPropertyFile file : CITPropertyFile.of(match, items, logger)) blackhole.consume(file.compile());
+        }
+    }
+
+}
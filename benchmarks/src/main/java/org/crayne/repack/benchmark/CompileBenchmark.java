@@ -0,0 +1,49 @@
+package org.crayne.repack.benchmark;
+
+import org.crayne.repack.conversion.PackWorkspace;
+import org.crayne.repack.core.CompileOptions;
+import org.crayne.repack.core.PackWorkspaceBuilder;
+import org.crayne.repack.util.logging.Logger;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+// end to end: parse the workspace and compile it into a zipped pack
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class CompileBenchmark {
+
+    @Param({"SMALL", "MEDIUM", "HUGE"})
+    public Fixture fixture;
+
+    private Logger logger;
+    private File workspace;
+    private File out;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        logger = Fixture.quietLogger();
+        workspace = fixture.create();
+        out = new File(workspace.getParentFile(), workspace.getName() + "-out");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Fixture.delete(workspace);
+        Files.deleteIfExists(new File(out.getPath() + ".zip").toPath());
+    }
+
+    @Benchmark
+    public boolean compile() {
+        final PackWorkspace packWorkspace = new PackWorkspaceBuilder(logger, new CompileOptions().cache(false)).setup(workspace).orElseThrow();
+        return packWorkspace.compile(out);
+    }
+
+}
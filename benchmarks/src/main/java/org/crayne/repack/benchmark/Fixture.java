@@ -0,0 +1,59 @@
+package org.crayne.repack.benchmark;
+
+import org.apache.commons.io.FileUtils;
+import org.crayne.repack.generator.GeneratorOptions;
+import org.crayne.repack.generator.WorkspaceGenerator;
+import org.crayne.repack.util.logging.Logger;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+// generated workspaces of different sizes, written to a temporary directory
+public enum Fixture {
+
+    SMALL(1, 4),
+    MEDIUM(20, 200),
+    HUGE(100, 2000);
+
+    private final int files;
+    private final int rules;
+
+    Fixture(final int files, final int rules) {
+        this.files = files;
+        this.rules = rules;
+    }
+
+    @NotNull
+    public GeneratorOptions options() {
+        return new GeneratorOptions().seed(ordinal()).files(files).rules(rules);
+    }
+
+    @NotNull
+    public static Logger quietLogger() {
+        return new Logger("", new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @NotNull
+    public File create() throws IOException {
+        final File root = Files.createTempDirectory("repack-" + name().toLowerCase()).toFile();
+        if (!new WorkspaceGenerator(quietLogger(), options()).generate(root)) throw new IOException("Could not generate fixture workspace " + this);
+        return root;
+    }
+
+    // the source of all pack files in this fixture, one after another
+    @NotNull
+    public List<String> sources() {
+        return new ArrayList<>(new WorkspaceGenerator(quietLogger(), options()).packFiles().values());
+    }
+
+    public static void delete(@NotNull final File workspace) throws IOException {
+        FileUtils.deleteDirectory(workspace);
+    }
+
+}
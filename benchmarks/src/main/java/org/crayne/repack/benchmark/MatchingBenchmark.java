@@ -0,0 +1,32 @@
+package org.crayne.repack.benchmark;
+
+import org.crayne.repack.conversion.util.VanillaItem;
+import org.crayne.repack.util.StringUtil;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MatchingBenchmark {
+
+    @Param({"*_helmet", "diamond_*", "*sword*", "stone", "*"})
+    public String pattern;
+
+    @Benchmark
+    public List<VanillaItem> allMatching() {
+        return VanillaItem.allMatching(pattern);
+    }
+
+    @Benchmark
+    public void matchPattern(final Blackhole blackhole) {
+        for (final VanillaItem item : VanillaItem.values()) blackhole.consume(StringUtil.matchPattern(pattern, item.name().toLowerCase()));
+    }
+
+}
@@ -0,0 +1,53 @@
+package org.crayne.repack.benchmark;
+
+import org.crayne.repack.parsing.ast.Node;
+import org.crayne.repack.parsing.parser.Parser;
+import org.crayne.repack.parsing.parser.TreeAnalyzer;
+import org.crayne.repack.util.logging.Logger;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// parsing includes lexing, since the parser tokenizes its input itself
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParserBenchmark {
+
+    @Param({"SMALL", "MEDIUM"})
+    public Fixture fixture;
+
+    private Logger logger;
+    private File file;
+    private String code;
+    private List<String> content;
+    private Node tree;
+
+    @Setup
+    public void setup() {
+        logger = Fixture.quietLogger();
+        file = new File("benchmark.rep");
+        code = String.join("\n", fixture.sources());
+        content = Arrays.stream(code.split("\n")).toList();
+        tree = parse();
+    }
+
+    @Benchmark
+    public Node parse() {
+        final Parser parser = new Parser(logger);
+        parser.parse(file, code, content);
+        return parser.tree().orElseThrow();
+    }
+
+    @Benchmark
+    public boolean analyze() {
+        return new TreeAnalyzer(logger).analyze(tree, content);
+    }
+
+}
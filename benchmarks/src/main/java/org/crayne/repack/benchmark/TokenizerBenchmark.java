@@ -0,0 +1,39 @@
+package org.crayne.repack.benchmark;
+
+import org.crayne.repack.parsing.lexer.Token;
+import org.crayne.repack.parsing.lexer.Tokenizer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenizerBenchmark {
+
+    @Param({"SMALL", "MEDIUM"})
+    public Fixture fixture;
+
+    private Tokenizer tokenizer;
+    private String code;
+    private List<String> content;
+
+    @Setup
+    public void setup() {
+        tokenizer = new Tokenizer(Fixture.quietLogger(), List.of("=>"));
+        code = String.join("\n", fixture.sources());
+        content = Arrays.stream(code.split("\n")).toList();
+    }
+
+    @Benchmark
+    public List<Token> tokenize() {
+        tokenizer.reset();
+        return tokenizer.tokenize(content, code);
+    }
+
+}
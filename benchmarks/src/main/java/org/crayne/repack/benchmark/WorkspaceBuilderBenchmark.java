@@ -0,0 +1,47 @@
+package org.crayne.repack.benchmark;
+
+import org.crayne.repack.conversion.PackWorkspace;
+import org.crayne.repack.core.CompileOptions;
+import org.crayne.repack.core.PackWorkspaceBuilder;
+import org.crayne.repack.util.logging.Logger;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WorkspaceBuilderBenchmark {
+
+    @Param({"SMALL", "MEDIUM", "HUGE"})
+    public Fixture fixture;
+
+    // with the build cache, every invocation after the first one loads all pack files from the cache
+    @Param({"false", "true"})
+    public boolean cache;
+
+    private Logger logger;
+    private File workspace;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        logger = Fixture.quietLogger();
+        workspace = fixture.create();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Fixture.delete(workspace);
+    }
+
+    @Benchmark
+    public PackWorkspace setupWorkspace() {
+        return new PackWorkspaceBuilder(logger, new CompileOptions().cache(cache)).setup(workspace).orElseThrow();
+    }
+
+}
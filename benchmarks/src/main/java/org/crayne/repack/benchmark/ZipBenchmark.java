@@ -0,0 +1,44 @@
+package org.crayne.repack.benchmark;
+
+import org.crayne.repack.conversion.util.ZipUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+// zips the generated fixture workspace directory itself
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ZipBenchmark {
+
+    @Param({"SMALL", "MEDIUM", "HUGE"})
+    public Fixture fixture;
+
+    private File workspace;
+    private File zip;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        workspace = fixture.create();
+        zip = Files.createTempFile("repack-benchmark", ".zip").toFile();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Fixture.delete(workspace);
+        Files.deleteIfExists(zip.toPath());
+    }
+
+    @Benchmark
+    public long zipDirectory() throws IOException {
+        ZipUtil.zipDirectory(workspace, zip);
+        return zip.length();
+    }
+
+}
@@ -1,23 +1,70 @@
 package org.crayne.repack.commandline;
 
 import org.crayne.repack.conversion.PackWorkspace;
+import org.crayne.repack.conversion.output.CopyStrategy;
+import org.crayne.repack.conversion.output.OutputMode;
+import org.crayne.repack.core.BuildCache;
+import org.crayne.repack.core.BuildManifest;
+import org.crayne.repack.core.CompileOptions;
+import org.crayne.repack.core.CompileProfiler;
+import org.crayne.repack.core.PackWorkspaceBuilder;
+import org.crayne.repack.daemon.CompileDaemon;
+import org.crayne.repack.daemon.DaemonClient;
+import org.crayne.repack.generator.GeneratorOptions;
+import org.crayne.repack.generator.WorkspaceGenerator;
 import org.crayne.repack.util.logging.Logger;
+import org.crayne.repack.watch.WorkspaceWatcher;
 import org.crayne.repack.util.logging.LoggingLevel;
 import org.jetbrains.annotations.NotNull;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
 
 public class CommandLineInterface {
 
     private static final Logger LOGGER = new Logger();
 
-    private static void compile(@NotNull final String in, @NotNull final String out) {
-        final boolean success = PackWorkspace
-                .of(in)
-                .map(p -> p.compile(out))
-                .orElse(false);
+    private static boolean compile(@NotNull final String in, @NotNull final String out, @NotNull final CompileOptions options,
+                                   @NotNull final Logger logger, @NotNull final Function<File, Optional<BuildCache>> caches) {
+        final File workspace = new File(in);
+        final BuildManifest manifest = new BuildManifest(workspace, new File(out), options, logger);
+        if (!options.force() && manifest.upToDate()) {
+            logger.log("Workspace is up to date, nothing to compile. Use --force to compile anyway.", LoggingLevel.SUCCESS);
+            return true;
+        }
+        final long startedMillis = System.currentTimeMillis();
+        final Optional<BuildCache> cache = options.cache() ? caches.apply(workspace) : Optional.empty();
+        final Optional<PackWorkspace> packWorkspace = cache
+                .map(c -> new PackWorkspaceBuilder(logger, options, c))
+                .orElseGet(() -> new PackWorkspaceBuilder(logger, options))
+                .setup(workspace);
 
-        if (!success) System.exit(1);
+        if (packWorkspace.isEmpty() || !packWorkspace.get().compile(out)) {
+            manifest.invalidate();
+            return false;
+        }
+        manifest.write(packWorkspace.get().inputs(), startedMillis);
+        return true;
+    }
+
+    private static void reportProfile(@NotNull final CompileProfiler profiler, @NotNull final String output, @NotNull final Logger logger) {
+        if (output.isEmpty()) {
+            profiler.printTable(logger);
+            return;
+        }
+        try {
+            Files.writeString(Path.of(output), profiler.toJson());
+            logger.info("Wrote compile profile to " + output);
+        } catch (final IOException e) {
+            logger.error("Could not write compile profile to '" + output + "': " + e.getMessage());
+        }
     }
 
     private static boolean handleNoArguments(@NotNull final String... args) {
@@ -40,29 +87,234 @@ Show the help page:
     $ help
 
 Compiling a pack to the optifine format:
-    $ compile "path-in" "path-out"
+    $ compile "path-in" "path-out" [options]
 
     Example:
         $ compile "test-workspace" "test-out"
-        The "test-workspace" folder will be compiled and the output folder will be called "test-out".""", LoggingLevel.HELP);
+        The "test-workspace" folder will be compiled and the output folder will be called "test-out".
+
+    Options:
+        --threads=<n>    Number of threads used to parse the pack files (default: number of available processors).
+        --output=<mode>  'zip' (default) writes the pack straight into "path-out.zip" and prints its SHA-1,
+                         'directory' writes it as plain files into the "path-out" folder instead. An existing folder
+                         is replaced at once, and only files whose content changed are written again.
+        --copy=<strategy>
+                         How textures and copied files get into a 'directory' output: 'copy' (default),
+                         'transfer' (zero-copy through the kernel), 'reflink' (shares the data blocks, on file
+                         systems that support it) or 'hardlink' (the output files are the workspace files, so
+                         editing one edits the other; for local testing). Falls back to a plain copy where
+                         the strategy cannot be used. 'reflink' starts a cp process for every file, which only
+                         pays off for large files; the first one tells whether the file system can clone at all.
+        --compression-level=<0-9>
+                         Deflate level of text entries like .properties and .json in the zip (default: 6).
+                         Textures and sounds are always stored as they are, 0 stores every entry uncompressed.
+        --io-limit=<n>   Number of file operations (writing files, copying textures) that may run at once (default: 32).
+                         They run on virtual threads on Java 21 and later, and on a pool of threads before that.
+                         1 runs every operation one after another.
+        --no-cache       Parse every pack file again instead of loading unchanged ones from the ".repack-cache" folder of the workspace.
+        --force          Compile even if nothing changed since the last compile. Without it, the compile is skipped
+                         as long as no input of the last one changed and its output was left untouched.
+        --no-daemon      Compile in this process even if a compile daemon is running.
+        --profile        Print wall time, cpu time and allocations of every compile phase, the slowest files and a few counters.
+        --profile=<file> Write the same profile as JSON to the given file instead.
+
+Recompiling a pack whenever something in its workspace changes:
+    $ watch "path-in" "path-out" [options]
+
+    Example:
+        $ watch "test-workspace" "test-out"
+        The "test-workspace" folder is compiled to "test-out" once, and then again after every change, until RePack is stopped.
+        Only changed pack files are parsed again, and only changed output files are written again.
+        The item properties are still generated from every pack file on each rebuild, since names and textures
+        are shared across pack files, so a rebuild takes at least as long as that part of a full compile.
+
+    Options: the same as for compile. With --profile, a profile is printed after every rebuild.
+
+Running a compile daemon, which keeps the compiler and its caches warm for every following compile:
+    $ daemon [--stop]
+
+    Example:
+        $ daemon
+        Compiles started with 'compile' are then run by the daemon, with their output shown as usual.
+        Without a running daemon, compile simply runs on its own. 'daemon --stop' stops the running daemon.
+
+Generating a synthetic workspace, e.g. for stress testing:
+    $ generate "path-out" [options]
+
+    Example:
+        $ generate "stress-workspace" --files=100 --rules=10000
+        A workspace with 100 pack files and 10000 match blocks will be generated into the (empty or missing) "stress-workspace" folder.
+
+    Options:
+        --seed=<n>         Seed of the generator; the same seed and options always generate the same workspace (default: 0).
+        --files=<n>        Number of pack files (default: 10).
+        --rules=<n>        Number of match blocks, spread over all pack files (default: 100).
+        --keys=<n>         Number of item keys per match block (default: 4).
+        --variables=<n>    Number of variables per pack file (default: 2).
+        --copies=<n>       Number of copy statements per pack file (default: 1).
+        --textures=<n>     Number of placeholder textures (default: 64).""", LoggingLevel.HELP);
     }
 
-    private static void handleCompileArgument(@NotNull final String... args) {
+    @NotNull
+    private static Map<String, String> options(@NotNull final List<String> arguments) {
+        final Map<String, String> options = new HashMap<>();
+        arguments.stream()
+                .filter(s -> s.startsWith("--"))
+                .map(s -> s.substring(2))
+                .forEach(s -> options.put(s.contains("=") ? s.substring(0, s.indexOf('=')) : s, s.contains("=") ? s.substring(s.indexOf('=') + 1) : ""));
+        return options;
+    }
+
+    @NotNull
+    private static Optional<CompileOptions> compileOptions(@NotNull final Map<String, String> options, @NotNull final Logger logger) {
+        final CompileOptions result = new CompileOptions();
+        for (final Map.Entry<String, String> option : options.entrySet()) {
+            final String value = option.getValue();
+            try {
+                switch (option.getKey()) {
+                    case "threads" -> result.threads(Integer.parseInt(value));
+                    case "profile" -> result.profiler(new CompileProfiler());
+                    case "compression-level" -> result.compressionLevel(Integer.parseInt(value));
+                    case "io-limit" -> result.ioLimit(Integer.parseInt(value));
+                    case "no-cache" -> result.cache(false);
+                    case "force" -> result.force(true);
+                    case "output" -> result.output(OutputMode.of(value).orElseThrow(() -> new IllegalArgumentException("Expected 'zip' or 'directory'")));
+                    case "copy" -> result.copy(CopyStrategy.of(value).orElseThrow(() -> new IllegalArgumentException("Expected 'copy', 'transfer', 'reflink' or 'hardlink'")));
+                    case "no-daemon" -> {}
+                    default -> {
+                        logger.error("Unknown option for compile: '--" + option.getKey() + "'.");
+                        return Optional.empty();
+                    }
+                }
+            } catch (final IllegalArgumentException e) {
+                logger.error("Invalid value '" + value + "' for option '--" + option.getKey() + "': " + e.getMessage());
+                return Optional.empty();
+            }
+        }
+        if (result.output() == OutputMode.ZIP && result.copy() != CopyStrategy.COPY)
+            logger.warn("Option '--copy' only applies to '--output=directory', every file is read into the zip anyway.");
+        return Optional.of(result);
+    }
+
+    @NotNull
+    private static Optional<GeneratorOptions> generatorOptions(@NotNull final Map<String, String> options) {
+        final GeneratorOptions result = new GeneratorOptions();
+        for (final Map.Entry<String, String> option : options.entrySet()) {
+            final String value = option.getValue();
+            try {
+                switch (option.getKey()) {
+                    case "seed" -> result.seed(Long.parseLong(value));
+                    case "files" -> result.files(Integer.parseInt(value));
+                    case "rules" -> result.rules(Integer.parseInt(value));
+                    case "keys" -> result.keys(Integer.parseInt(value));
+                    case "variables" -> result.variables(Integer.parseInt(value));
+                    case "copies" -> result.copies(Integer.parseInt(value));
+                    case "textures" -> result.textures(Integer.parseInt(value));
+                    default -> {
+                        LOGGER.error("Unknown option for generate: '--" + option.getKey() + "'.");
+                        return Optional.empty();
+                    }
+                }
+            } catch (final IllegalArgumentException e) {
+                LOGGER.error("Invalid value '" + value + "' for option '--" + option.getKey() + "': " + e.getMessage());
+                return Optional.empty();
+            }
+        }
+        return Optional.of(result);
+    }
+
+    private static void handleGenerateArgument(@NotNull final String... args) {
         final List<String> arguments = List.of(args).subList(1, args.length);
-        if (arguments.size() != 2) {
-            LOGGER.error("Expected 2 arguments, but got " + arguments.size() + ".");
-            LOGGER.error("Usage: java -jar RePack.jar compile \"path-in\" \"path-out\"");
+        final List<String> paths = arguments.stream().filter(s -> !s.startsWith("--")).toList();
+        if (paths.size() != 1) {
+            LOGGER.error("Expected 1 argument, but got " + paths.size() + ".");
+            LOGGER.error("Usage: java -jar RePack.jar generate \"path-out\" [options]");
+            System.exit(1);
+            return;
+        }
+        final Optional<GeneratorOptions> options = generatorOptions(options(arguments));
+        if (options.isEmpty()) {
+            LOGGER.log("Usage: java -jar RePack.jar help", LoggingLevel.HELP);
             System.exit(1);
             return;
         }
-        final String in = arguments.get(0);
-        final String out = arguments.get(1);
-
         final long startedMillis = System.currentTimeMillis();
-        LOGGER.info(">>> Compiling workspace " + in + " to " + out + "...");
-        compile(in, out);
+        final boolean success = new WorkspaceGenerator(LOGGER, options.get()).generate(new File(paths.get(0)));
         final long finishedMillis = System.currentTimeMillis();
         LOGGER.info("Finished in " + (finishedMillis - startedMillis) + "ms.");
+        if (!success) System.exit(1);
+    }
+
+    // compiles as described by the arguments following 'compile' and returns the exit code. the compile daemon runs this for its clients,
+    // with a logger that streams back to the client and the build caches it keeps open between compiles
+    public static int compile(@NotNull final List<String> arguments, @NotNull final Logger logger, @NotNull final Function<File, Optional<BuildCache>> caches) {
+        final List<String> paths = arguments.stream().filter(s -> !s.startsWith("--")).toList();
+        if (paths.size() != 2) {
+            logger.error("Expected 2 arguments, but got " + paths.size() + ".");
+            logger.error("Usage: java -jar RePack.jar compile \"path-in\" \"path-out\" [options]");
+            return 1;
+        }
+        final Map<String, String> optionValues = options(arguments);
+        final Optional<CompileOptions> options = compileOptions(optionValues, logger);
+        if (options.isEmpty()) {
+            logger.log("Usage: java -jar RePack.jar help", LoggingLevel.HELP);
+            return 1;
+        }
+        final String in = paths.get(0);
+        final String out = paths.get(1);
+
+        final long startedMillis = System.currentTimeMillis();
+        logger.info(">>> Compiling workspace " + in + " to " + out + "...");
+        final boolean success = compile(in, out, options.get(), logger, caches);
+        final long finishedMillis = System.currentTimeMillis();
+        logger.info("Finished in " + (finishedMillis - startedMillis) + "ms.");
+
+        if (options.get().profiler().enabled()) reportProfile(options.get().profiler(), optionValues.get("profile"), logger);
+        return success ? 0 : 1;
+    }
+
+    private static void handleCompileArgument(@NotNull final String... args) {
+        final List<String> arguments = List.of(args).subList(1, args.length);
+        final Optional<Integer> exitCode = arguments.contains("--no-daemon")
+                ? Optional.empty()
+                : new DaemonClient(LOGGER).compile(arguments);
+
+        final int exit = exitCode.orElseGet(() -> compile(arguments, LOGGER, workspace -> Optional.empty()));
+        if (exit != 0) System.exit(exit);
+    }
+
+    private static void handleDaemonArgument(@NotNull final String... args) {
+        final List<String> arguments = List.of(args).subList(1, args.length);
+        if (arguments.contains("--stop")) {
+            if (!new DaemonClient(LOGGER).stop()) System.exit(1);
+            return;
+        }
+        if (!arguments.isEmpty()) {
+            LOGGER.error("Unknown arguments for daemon: " + String.join(" ", arguments));
+            LOGGER.error("Usage: java -jar RePack.jar daemon [--stop]");
+            System.exit(1);
+            return;
+        }
+        if (!new CompileDaemon(LOGGER, CompileDaemon.defaultSocket()).run()) System.exit(1);
+    }
+
+    private static void handleWatchArgument(@NotNull final String... args) {
+        final List<String> arguments = List.of(args).subList(1, args.length);
+        final List<String> paths = arguments.stream().filter(s -> !s.startsWith("--")).toList();
+        if (paths.size() != 2) {
+            LOGGER.error("Expected 2 arguments, but got " + paths.size() + ".");
+            LOGGER.error("Usage: java -jar RePack.jar watch \"path-in\" \"path-out\" [options]");
+            System.exit(1);
+            return;
+        }
+        final Optional<CompileOptions> options = compileOptions(options(arguments), LOGGER);
+        if (options.isEmpty()) {
+            LOGGER.log("Usage: java -jar RePack.jar help", LoggingLevel.HELP);
+            System.exit(1);
+            return;
+        }
+        LOGGER.info(">>> Watching workspace " + paths.get(0) + ", compiling to " + paths.get(1) + "...");
+        if (!new WorkspaceWatcher(LOGGER, new File(paths.get(0)), new File(paths.get(1)), options.get()).watch()) System.exit(1);
     }
 
     private static void handleUnrecognizedArgument(@NotNull final String arg) {
@@ -77,6 +329,9 @@ Compiling a pack to the optifine format:
         switch (arg) {
             case "help" -> handleHelpArgument();
             case "compile" -> handleCompileArgument(args);
+            case "generate" -> handleGenerateArgument(args);
+            case "watch" -> handleWatchArgument(args);
+            case "daemon" -> handleDaemonArgument(args);
             default -> handleUnrecognizedArgument(arg);
         }
     }
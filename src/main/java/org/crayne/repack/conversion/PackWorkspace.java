@@ -1,14 +1,29 @@
 package org.crayne.repack.conversion;
 
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.crayne.repack.conversion.cit.CITModelPropertyFile;
 import org.crayne.repack.conversion.cit.CITPropertyFile;
+import org.crayne.repack.conversion.cit.CITTexturePropertyFile;
+import org.crayne.repack.conversion.util.ItemExpansionCache;
+import org.crayne.repack.conversion.util.PropertiesWriter;
+import org.crayne.repack.conversion.util.TextureDeduplicator;
 import org.crayne.repack.conversion.util.VersionPackFormat;
-import org.crayne.repack.conversion.util.ZipUtil;
+import org.crayne.repack.conversion.output.CopyStrategy;
+import org.crayne.repack.conversion.output.DirectoryPackOutput;
+import org.crayne.repack.conversion.output.FileCopier;
+import org.crayne.repack.conversion.output.OutputNameAllocator;
+import org.crayne.repack.conversion.output.PackOutput;
+import org.crayne.repack.conversion.output.SyncPackOutput;
+import org.crayne.repack.conversion.output.ZipPackOutput;
+import org.crayne.repack.core.BuildInputs;
+import org.crayne.repack.core.CompileOptions;
+import org.crayne.repack.core.CompileProfiler;
+import org.crayne.repack.core.IoExecutor;
 import org.crayne.repack.core.PackWorkspaceBuilder;
+import org.crayne.repack.core.WorkspaceIndex;
 import org.crayne.repack.core.single.PackFile;
 import org.crayne.repack.core.single.PackVariable;
+import org.crayne.repack.core.single.VariableScope;
 import org.crayne.repack.core.single.predicate.PackCopyPredicate;
 import org.crayne.repack.core.single.predicate.PackMatchPredicate;
 import org.crayne.repack.util.StringUtil;
@@ -16,13 +31,18 @@ import org.crayne.repack.util.logging.Logger;
 import org.crayne.repack.util.logging.LoggingLevel;
 import org.jetbrains.annotations.NotNull;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 public class PackWorkspace {
@@ -31,21 +51,48 @@ public class PackWorkspace {
     private final Set<PackFile> packFiles;
 
     @NotNull
-    private final List<PackVariable> globalVariables;
+    private final VariableScope globals;
+
+    // the names of every let of the pack files added so far, so checking a new global against them does not walk every file
+    @NotNull
+    private final Set<String> fileVariables;
 
     @NotNull
     private final Logger logger;
 
+    @NotNull
+    private final CompileOptions options;
+
+    @NotNull
+    private final BuildInputs inputs;
+
+    @NotNull
+    private final WorkspaceIndex index;
+
     public PackWorkspace(@NotNull final Logger logger) {
+        this(logger, new CompileOptions());
+    }
+
+    public PackWorkspace(@NotNull final Logger logger, @NotNull final CompileOptions options) {
         this.logger = logger;
+        this.options = options;
+        this.inputs = new BuildInputs();
+        this.index = new WorkspaceIndex();
         this.packFiles = new HashSet<>();
-        this.globalVariables = new ArrayList<>();
+        this.globals = new VariableScope();
+        this.fileVariables = new HashSet<>();
     }
 
     public PackWorkspace(@NotNull final Logger logger, @NotNull final Collection<PackFile> packFiles, @NotNull final Collection<PackVariable> globalVariables) {
         this.logger = logger;
-        this.packFiles = new HashSet<>(packFiles);
-        this.globalVariables = new ArrayList<>(globalVariables);
+        this.options = new CompileOptions();
+        this.inputs = new BuildInputs();
+        this.index = new WorkspaceIndex();
+        this.packFiles = new HashSet<>();
+        this.globals = new VariableScope();
+        this.fileVariables = new HashSet<>();
+        globalVariables.forEach(globals::define);
+        packFiles.forEach(this::addPackFile);
     }
 
     @NotNull
@@ -53,23 +100,56 @@ public class PackWorkspace {
         return logger;
     }
 
+    @NotNull
+    public CompileOptions options() {
+        return options;
+    }
+
+    // every file this workspace was built from so far
+    @NotNull
+    public BuildInputs inputs() {
+        return inputs;
+    }
+
+    // the files of the workspace, as found while setting it up
+    @NotNull
+    public WorkspaceIndex index() {
+        return index;
+    }
+
     @NotNull
     public Set<PackFile> packFiles() {
         return packFiles;
     }
 
+    public void addPackFile(@NotNull final PackFile packFile) {
+        packFiles.add(packFile);
+        packFile.variables().forEach(v -> fileVariables.add(v.name()));
+    }
+
     @NotNull
     public List<PackVariable> globalVariables() {
-        return globalVariables;
+        return globals.variables();
+    }
+
+    // the scope the lets of every pack file can see
+    @NotNull
+    public VariableScope globals() {
+        return globals;
     }
 
     public void defineVariable(@NotNull final PackVariable variable) {
-        globalVariables.add(variable);
+        globals.define(variable);
+    }
+
+    // the pack files in a fixed order, so everything that depends on the order comes out the same no matter how the set is hashed
+    @NotNull
+    private List<PackFile> sortedPackFiles() {
+        return packFiles.stream().sorted(Comparator.comparing(p -> p.file().getPath())).toList();
     }
 
     public boolean variableDefined(@NotNull final String name) {
-        return globalVariables.stream().anyMatch(v -> v.name().equals(name))
-                || packFiles.stream().anyMatch(p -> p.variableDefined(name));
+        return globals.defined(name) || fileVariables.contains(name);
     }
 
     @NotNull
@@ -102,180 +182,322 @@ public class PackWorkspace {
         return new PackWorkspaceBuilder(logger).setup(new File(inPath));
     }
 
+    @NotNull
+    public static Optional<PackWorkspace> of(@NotNull final String inPath, @NotNull final CompileOptions options) {
+        return new PackWorkspaceBuilder(new Logger(), options).setup(new File(inPath));
+    }
+
+    @NotNull
+    public static Optional<PackWorkspace> of(@NotNull final Logger logger, @NotNull final File in, @NotNull final CompileOptions options) {
+        return new PackWorkspaceBuilder(logger, options).setup(in);
+    }
+
     public boolean compile(@NotNull final String outPath) {
         return compile(new File(outPath));
     }
 
+    private void written(final long bytes) {
+        final CompileProfiler profiler = options.profiler();
+        profiler.count(CompileProfiler.Counter.FILES_WRITTEN, 1);
+        profiler.count(CompileProfiler.Counter.BYTES_WRITTEN, bytes);
+    }
+
     public boolean compile(@NotNull final File out) {
-        logger.info("Compiling workspace (" + packFiles.size() + " pack files)...");
+        final PackOutput output;
         try {
-            if (out.isDirectory()) {
-                logger.info("Deleting old pack output...");
-                FileUtils.deleteDirectory(out);
-            }
+            output = PackOutput.of(options, out);
         } catch (final IOException e) {
-            logger.error("Could not delete old pack output directory '" + out.getAbsolutePath() + "': " + e.getMessage());
+            logger.error("Could not create new pack output '" + out.getAbsolutePath() + "': " + e.getMessage());
             e.printStackTrace(logger);
             return false;
         }
-        if (!out.mkdirs()) {
-            logger.error("Could not create new pack output directory '" + out.getAbsolutePath() + "'.");
-            return false;
-        }
+        return compile(output);
+    }
 
-        final File packMcMeta = new File(out, "pack.mcmeta");
+    @SuppressWarnings("try")
+    public boolean compile(@NotNull final PackOutput output) {
+        final CompileProfiler profiler = options.profiler();
+        logger.info("Compiling workspace (" + packFiles.size() + " pack files)...");
         try {
             final VersionPackFormat versionPackFormat = VersionPackFormat
-                    .of(globalVariables.stream()
-                            .filter(v -> v.name().equals("pack_version"))
-                            .findAny()
+                    .of(globals.lookup("pack_version")
                             .orElseThrow(() -> new RuntimeException("No pack version was defined in the RePack workspace. Use 'global pack_version = 1.X.X' to define the pack version."))
                             .value()
                     ).orElseThrow(() -> new RuntimeException(""));
 
-            final String packDescription = globalVariables.stream()
-                    .filter(v -> v.name().equals("pack_description"))
-                    .findAny()
+            final String packDescription = globals.lookup("pack_description")
                     .map(PackVariable::value)
                     .orElse("");
 
-            Files.writeString(packMcMeta.toPath(), "{\"pack\":{\"pack_format\":" + versionPackFormat.packFormat() + ",\"description\":\"" + packDescription + "\"}}");
+            final byte[] packMcMeta = ("{\"pack\":{\"pack_format\":" + versionPackFormat.packFormat() + ",\"description\":\"" + packDescription + "\"}}").getBytes(StandardCharsets.UTF_8);
+            output.write("pack.mcmeta", packMcMeta);
+            written(packMcMeta.length);
         } catch (final IOException | RuntimeException e) {
-            logger.error("Could not create pack.mcmeta file (" + packMcMeta.getAbsolutePath() + "): " + e.getMessage());
+            logger.error("Could not create pack.mcmeta file (" + output.describe("pack.mcmeta") + "): " + e.getMessage());
             e.printStackTrace(logger);
-            return false;
+            return fail(output);
         }
 
-        final File cit = new File(out, "assets/minecraft/optifine/cit");
-        if (!cit.mkdirs()) {
-            logger.error("Could not create pack CIT directory '" + cit.getAbsolutePath() + "'.");
-            return false;
-        }
+        final String cit = "assets/minecraft/optifine/cit";
 
         final AtomicBoolean success = new AtomicBoolean(true);
-        packFiles.stream()
-                .map(p -> Pair.of(p, p.matches().stream()
-                        .filter(pr -> pr instanceof PackCopyPredicate)
-                        .map(pr -> (PackCopyPredicate) pr)
-                        .map(pr -> pr.copyFiles().entrySet())
-                        .flatMap(Collection::stream)
-                        .collect(Collectors.toSet())))
-                .forEach(packFilePair -> {
-                    final Set<Map.Entry<String, String>> copyFiles = packFilePair.getValue();
-                    final PackFile packFile = packFilePair.getLeft();
-                    copyFiles.forEach(copyFile -> {
-                        final File from = new File(packFile.root(), copyFile.getKey());
-                        final File to = new File(out, copyFile.getValue());
-
-                        if (!from.isFile()) {
-                            logger.error("Could not execute copy statement: file source was not found (source = " + from.getAbsolutePath() + ", destination = " + to.getAbsolutePath() + ")");
+        try (final IoExecutor io = new IoExecutor(options.ioLimit())) {
+            // destinations are claimed here, in statement order (pack files sorted by path), since the copies themselves finish in any order
+            final Set<String> destinations = ConcurrentHashMap.newKeySet();
+            final List<Future<ByteArrayOutputStream>> copies = new ArrayList<>();
+            sortedPackFiles().stream()
+                    .map(p -> Pair.of(p, p.matches().stream()
+                            .filter(pr -> pr instanceof PackCopyPredicate)
+                            .map(pr -> (PackCopyPredicate) pr)
+                            .map(pr -> pr.copyFiles().entrySet())
+                            .flatMap(Collection::stream)
+                            .toList()))
+                    .forEach(packFilePair -> {
+                        final List<Map.Entry<String, String>> copyFiles = packFilePair.getValue();
+                        final PackFile packFile = packFilePair.getLeft();
+                        copyFiles.forEach(copyFile -> {
+                            final File from = new File(packFile.root(), copyFile.getKey());
+                            final String to = copyFile.getValue();
+
+                            final Optional<WorkspaceIndex.Entry> source = index.find(from);
+                            final boolean taken = source.isPresent() && (output.exists(to) || !destinations.add(PackOutput.normalize(to)));
+                            copies.add(io.submit(logger, log -> {
+                                if (source.isEmpty()) {
+                                    inputs.missing(from);
+                                    log.error("Could not execute copy statement: file source was not found (source = " + from.getAbsolutePath() + ", destination = " + output.describe(to) + ")");
+                                    success.set(false);
+                                    return;
+                                }
+                                if (taken) {
+                                    log.warn("Copy statement warning: file destination already exists and will be replaced (source = " + from.getAbsolutePath() + ", destination = " + output.describe(to) + ")");
+                                    return;
+                                }
+                                inputs.read(from);
+                                try (final CompileProfiler.Measurement ignored = profiler.measure(CompileProfiler.Phase.TEXTURE_COPY)) {
+                                    output.copy(from, to);
+                                    written(source.get().size());
+                                } catch (IOException e) {
+                                    log.error("Could not execute copy statement (source = " + from.getAbsolutePath() + ", destination = " + output.describe(to) + "): " + e.getMessage());
+                                    e.printStackTrace(log);
+                                    success.set(false);
+                                    return;
+                                }
+                                log.info("Copied file from " + from.getAbsolutePath() + " to " + output.describe(to) + " successfully");
+                            }));
+                        });
+                    });
+            copies.forEach(copy -> io.replay(logger, copy));
+        }
+
+        if (!success.get()) return fail(output);
+
+        final List<Pair<PackFile, List<CITPropertyFile>>> propertiesFiles;
+        final ItemExpansionCache items = ItemExpansionCache.forCompile();
+        try (final CompileProfiler.Measurement ignored = profiler.measure(CompileProfiler.Phase.CIT)) {
+            propertiesFiles = propertiesFiles(items);
+        }
+        profiler.count(CompileProfiler.Counter.EXPANSION_CACHE_HITS, items.hits());
+        profiler.count(CompileProfiler.Counter.EXPANSION_CACHE_MISSES, items.misses());
+        if (profiler.enabled()) profiler.count(CompileProfiler.Counter.EXPANDED_ITEMS, propertiesFiles.stream()
+                .flatMap(p -> p.getRight().stream())
+                .mapToLong(p -> p.itemMatch().items().size())
+                .sum());
+
+        final TextureDeduplicator textures = new TextureDeduplicator(options.threads());
+        try (final CompileProfiler.Measurement ignored = profiler.measure(CompileProfiler.Phase.TEXTURE_DEDUPE)) {
+            textures.deduplicate(propertiesFiles.stream()
+                    .flatMap(pair -> pair.getRight().stream()
+                            .filter(property -> property instanceof CITTexturePropertyFile)
+                            .map(property -> new File(pair.getLeft().root(), property.filePath()).toPath()))
+                    .toList(), index);
+        } catch (final IOException e) {
+            logger.error("Could not read textures: " + e.getMessage());
+            e.printStackTrace(logger);
+            return fail(output);
+        }
+        if (textures.duplicates() > 0) logger.info("Found " + textures.duplicates() + " texture" + (textures.duplicates() == 1 ? "" : "s")
+                + " with the same content as another one; every distinct texture is only written once.");
+        profiler.count(CompileProfiler.Counter.DEDUPLICATED_TEXTURES, textures.duplicates());
+
+        final List<Pair<PackFile, List<Planned>>> plan = plan(propertiesFiles, textures, cit, output);
+        try (final IoExecutor io = new IoExecutor(options.ioLimit())) {
+            final List<Pair<PackFile, List<Future<ByteArrayOutputStream>>>> compiled = new ArrayList<>();
+            plan.forEach(pair -> {
+                final List<Future<ByteArrayOutputStream>> operations = new ArrayList<>();
+                compiled.add(Pair.of(pair.getLeft(), operations));
+
+                pair.getRight().forEach(planned -> {
+                    final CITPropertyFile property = planned.property();
+                    final String file = planned.file();
+                    final File sourceTextureFile = planned.sourceTexture();
+                    final String destinationName = planned.textureName();
+                    final String destinationTextureFile = cit + "/" + destinationName;
+
+                    operations.add(io.submit(logger, log -> {
+                        final PropertiesWriter content = PropertiesWriter.obtain();
+                        try (final CompileProfiler.Measurement ignored = profiler.measure(CompileProfiler.Phase.CIT)) {
+                            if (property instanceof final CITTexturePropertyFile texture)
+                                texture.compile(content, destinationName.substring(0, destinationName.length() - ".png".length()));
+                            else property.compile(content);
+                            output.write(file, content);
+                            written(content.size());
+                        } catch (final IOException e) {
+                            log.error("\tCould not create output pack file '" + output.describe(file) + "': " + e.getMessage());
+                            e.printStackTrace(log);
                             success.set(false);
                             return;
+                        } finally {
+                            content.release();
                         }
-                        if (to.isFile()) {
-                            logger.warn("Copy statement warning: file destination already exists and will be replaced (source = " + from.getAbsolutePath() + ", destination = " + to.getAbsolutePath() + ")");
+                        if (property instanceof final CITModelPropertyFile modelPropertyFile) return;
+
+                        inputs.read(sourceTextureFile);
+                        if (!planned.copyTexture()) {
+                            log.info("\t\tTexture (" + destinationName + ") was already copied.");
                             return;
                         }
-                        try {
-                            //noinspection ResultOfMethodCallIgnored
-                            to.mkdirs();
-                            Files.copy(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING);
-                        } catch (IOException e) {
-                            logger.error("Could not execute copy statement (source = " + from.getAbsolutePath() + ", destination = " + to.getAbsolutePath() + "): " + e.getMessage());
-                            e.printStackTrace(logger);
+                        log.info("\t\tCopying texture (" + destinationName + ")...");
+                        try (final CompileProfiler.Measurement ignored = profiler.measure(CompileProfiler.Phase.TEXTURE_COPY)) {
+                            output.copy(sourceTextureFile, destinationTextureFile);
+                            written(index.find(sourceTextureFile).map(WorkspaceIndex.Entry::size).orElse(0L));
+                        } catch (final IOException e) {
+                            log.error("Could not copy pack file texture '" + sourceTextureFile.getAbsolutePath() + "' to '" + output.describe(destinationTextureFile) + "': " + e.getMessage());
+                            e.printStackTrace(log);
                             success.set(false);
-                            return;
                         }
-                        logger.info("Copied file from " + from.getAbsolutePath() + " to " + to.getAbsolutePath() + " successfully");
-                    });
+                    }));
                 });
+            });
+
+            // the log of every pack file is replayed as a whole, just like the operations had run one after another
+            for (final Pair<PackFile, List<Future<ByteArrayOutputStream>>> pair : compiled) {
+                logger.info("\tCompiling pack file '" + pair.getLeft().file().getAbsolutePath() + "'...");
+                final int amt = pair.getRight().size();
+                if (amt == 0) {
+                    logger.log("Successfully compiled pack file (no operation was performed).", LoggingLevel.SUCCESS);
+                    continue;
+                }
+                logger.info("\tCreating " + amt + " CIT properties file" + (amt == 1 ? "" : "s") + "...");
+                pair.getRight().forEach(operation -> io.replay(logger, operation));
+                logger.log("\tSuccessfully compiled pack file.", LoggingLevel.SUCCESS);
+            }
+        }
 
-        if (!success.get()) {
-            logger.error("Could not compile workspace; see above error.");
-            return false;
+        if (!success.get()) return fail(output);
+
+        try (final CompileProfiler.Measurement ignored = profiler.measure(CompileProfiler.Phase.ZIP)) {
+            output.finish();
+        } catch (final IOException e) {
+            logger.error("Could not write resource pack to '" + output + "': " + e.getMessage());
+            e.printStackTrace(logger);
+            return fail(output);
+        }
+        logger.log("Successfully compiled workspace to '" + output + "'.", LoggingLevel.SUCCESS);
+        if (output instanceof final ZipPackOutput zip) logger.info("SHA-1 of the resource pack: " + zip.sha1());
+        if (output instanceof final SyncPackOutput sync) {
+            logger.info("Kept " + sync.unchanged() + " unchanged files, wrote " + sync.changed() + " new or changed ones and removed " + sync.removed() + " stale ones.");
+            report(sync.copier());
         }
+        if (output instanceof final DirectoryPackOutput directory) report(directory.copier());
+        return true;
+    }
 
-        final Set<Pair<PackFile, Set<CITPropertyFile>>> propertiesFiles = packFiles.stream().map(p -> Pair.of(p, p.matches()
-                        .stream()
-                        .filter(pr -> pr instanceof PackMatchPredicate)
-                        .map(m -> CITPropertyFile.of((PackMatchPredicate) m, logger))
-                        .flatMap(Collection::stream)
-                        .collect(Collectors.toSet())))
-                .collect(Collectors.toSet());
-
-        propertiesFiles.forEach(pair -> {
-                    final PackFile p = pair.getLeft();
-                    logger.info("\tCompiling pack file '" + p.file().getAbsolutePath() + "'...");
-                    final int amt = pair.getRight().size();
-                    if (amt == 0) {
-                        logger.log("Successfully compiled pack file (no operation was performed).", LoggingLevel.SUCCESS);
-                        return;
-                    }
-                    logger.info("\tCreating " + amt + " CIT properties file" + (amt == 1 ? "" : "s") + "...");
-
-                    pair.getRight().forEach(property -> {
-                        final File file = property.finalizedFile(cit);
-                        try {
-                            Files.writeString(file.toPath(), property.compile());
-                        } catch (final IOException e) {
-                            logger.error("\tCould not create output pack file '" + file.getAbsolutePath() + "': " + e.getMessage());
-                            e.printStackTrace(logger);
-                            success.set(false);
-                            return;
-                        }
-                        if (property instanceof final CITModelPropertyFile modelPropertyFile) return;
+    private void report(@NotNull final FileCopier copier) {
+        copier.count(options.profiler());
+        copier.report().ifPresent(report -> logger.info("Files from the workspace: " + report + "."));
+        for (CopyStrategy strategy = copier.strategy(); strategy.fallback() != null; strategy = strategy.fallback()) {
+            final CopyStrategy tried = strategy;
+            copier.unsupported(tried).ifPresent(reason -> logger.warn("Could not use copy strategy '" + tried.optionName() + "' (" + reason + "), fell back to the next one."));
+        }
+    }
 
-                        final String destinationName = property.fileName();
-                        logger.info("\t\tCopying texture (" + destinationName + ")...");
+    // a properties file, with every output name it needs already assigned
+    private record Planned(@NotNull CITPropertyFile property, @NotNull String file, @NotNull File sourceTexture, @NotNull String textureName, boolean copyTexture) {}
 
-                        final File sourceTextureFile = new File(p.root(), property.filePath());
-                        final File destinationTextureFile = new File(file.getParentFile(),
-                                destinationName.endsWith(".png")
-                                        ? destinationName
-                                        : destinationName + ".png"
-                        );
+    // assigns the name of every properties file up front, in plan order and without looking at the output, before anything is written
+    @NotNull
+    private List<Pair<PackFile, List<Planned>>> plan(@NotNull final List<Pair<PackFile, List<CITPropertyFile>>> propertiesFiles,
+                                                     @NotNull final TextureDeduplicator textures, @NotNull final String cit, @NotNull final PackOutput output) {
+        final OutputNameAllocator names = new OutputNameAllocator(output::exists);
+        final Set<String> copiedTextures = new HashSet<>();
+        return propertiesFiles.stream().map(pair -> {
+            final PackFile p = pair.getLeft();
+            final List<Planned> planned = pair.getRight().stream().map(property -> {
+                final String file = names.allocate(cit + "/" + property.fileNameNoFiletype(), ".properties");
+                final File sourceTexture = new File(p.root(), property.filePath());
+                final String textureName = property instanceof CITTexturePropertyFile
+                        ? textures.name(sourceTexture.toPath()).orElseThrow()
+                        : property.fileName();
+                final boolean copyTexture = !(property instanceof CITModelPropertyFile) && copiedTextures.add(textureName);
+                return new Planned(property, file, sourceTexture, textureName, copyTexture);
+            }).toList();
+            return Pair.of(p, planned);
+        }).toList();
+    }
 
-                        //noinspection ResultOfMethodCallIgnored
-                        destinationTextureFile.getParentFile().mkdirs();
-                        try {
-                            Files.copy(sourceTextureFile.toPath(), destinationTextureFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
-                        } catch (final IOException e) {
-                            logger.error("Could not copy pack file texture '" + sourceTextureFile.getAbsolutePath() + "' to '" + destinationTextureFile.getAbsolutePath() + "': " + e.getMessage());
-                            e.printStackTrace(logger);
-                            success.set(false);
-                        }
-                    });
-                    logger.log("\tSuccessfully compiled pack file.", LoggingLevel.SUCCESS);
-                });
+    // a match statement of a pack file, and what it compiled to
+    private record Generated(@NotNull PackFile packFile, @NotNull Set<CITPropertyFile> propertiesFiles, @NotNull ByteArrayOutputStream log) {}
 
-        if (success.get())
-            logger.log("Successfully compiled workspace to '" + out.getAbsolutePath() + "'.", LoggingLevel.SUCCESS);
-        else {
-            logger.error("Could not compile workspace; see above error.");
+    // the properties files of every match statement, generated in parallel. they are put together in a fixed order (pack files
+    // by path, match statements as they were declared) and the log of every statement is replayed in that order too,
+    // so the compiled pack and its log are the same no matter how many threads were used
+    @NotNull
+    private List<Pair<PackFile, List<CITPropertyFile>>> propertiesFiles(@NotNull final ItemExpansionCache items) {
+        final List<PackFile> sorted = sortedPackFiles();
+        final List<Pair<PackFile, PackMatchPredicate>> matches = sorted.stream()
+                .flatMap(p -> p.matches().stream()
+                        .filter(pr -> pr instanceof PackMatchPredicate)
+                        .map(m -> Pair.of(p, (PackMatchPredicate) m)))
+                .toList();
+
+        final Function<Pair<PackFile, PackMatchPredicate>, Generated> generate = match -> {
+            final ByteArrayOutputStream log = new ByteArrayOutputStream();
+            final Set<CITPropertyFile> generated = CITPropertyFile.of(match.getRight(), items, logger.buffered(log));
+            return new Generated(match.getLeft(), generated, log);
+        };
+        final List<Generated> generated;
+        if (options.threads() == 1 || matches.size() <= 1) {
+            generated = matches.stream().map(generate).toList();
+        } else {
+            final ForkJoinPool pool = new ForkJoinPool(options.threads());
             try {
-                if (out.isDirectory()) FileUtils.deleteDirectory(out);
-            } catch (final IOException e) {
-                logger.error("Could not delete failed pack output directory '" + out.getAbsolutePath() + "': " + e.getMessage());
-                e.printStackTrace(logger);
-                return false;
+                generated = pool.submit(() -> matches.parallelStream().map(generate).toList()).get();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while generating properties files", e);
+            } catch (final ExecutionException e) {
+                if (e.getCause() instanceof final RuntimeException runtime) throw runtime;
+                throw new IllegalStateException(e.getCause());
+            } finally {
+                pool.shutdownNow();
             }
         }
+
+        final Map<PackFile, List<CITPropertyFile>> byPackFile = new LinkedHashMap<>();
+        sorted.forEach(p -> byPackFile.put(p, new ArrayList<>()));
+        for (final Generated g : generated) {
+            logger.replay(g.log());
+            byPackFile.get(g.packFile()).addAll(g.propertiesFiles());
+        }
+        return byPackFile.entrySet().stream().map(e -> Pair.of(e.getKey(), e.getValue())).toList();
+    }
+
+    private boolean fail(@NotNull final PackOutput output) {
+        logger.error("Could not compile workspace; see above error.");
         try {
-            ZipUtil.zipDirectory(out, new File(out.getName() + ".zip"));
-            FileUtils.deleteDirectory(out);
+            output.discard();
         } catch (final IOException e) {
-            logger.error("Could not pack output resource pack directory: " + e.getMessage());
+            logger.error("Could not delete failed pack output '" + output + "': " + e.getMessage());
             e.printStackTrace(logger);
-            if (out.isDirectory()) logger.error("The resource pack is still usable at " + out.getAbsolutePath() + ", but it is not a zip file.");
         }
-        return success.get();
+        return false;
     }
 
     @NotNull
     public String toString() {
         return "PackWorkspace {\n" +
                 ("packFiles = " + StringUtil.stringOf(packFiles) +
-                ", globalVariables = " + StringUtil.stringOf(globalVariables)).indent(3) +
+                ", globalVariables = " + StringUtil.stringOf(globals.variables())).indent(3) +
                 '}';
     }
 
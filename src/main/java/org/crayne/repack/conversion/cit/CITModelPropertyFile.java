@@ -2,6 +2,9 @@ package org.crayne.repack.conversion.cit;
 
 import org.apache.commons.lang3.StringUtils;
 import org.crayne.repack.conversion.match.ItemModelMatch;
+import org.crayne.repack.conversion.util.ItemExpansionCache;
+import org.crayne.repack.conversion.util.ItemSet;
+import org.crayne.repack.conversion.util.PropertiesWriter;
 import org.crayne.repack.conversion.util.TextureType;
 import org.crayne.repack.core.single.PredicateType;
 import org.crayne.repack.core.single.predicate.PackItemModelPredicate;
@@ -36,13 +39,12 @@ public class CITModelPropertyFile implements CITPropertyFile {
         this.type = type;
         this.filePath = filePath;
         this.itemMatch = itemMatch;
-        this.predicates = new HashSet<>(predicates);
+        this.predicates = new LinkedHashSet<>(predicates);
         this.weight = weight;
     }
 
-    @NotNull
-    private String modelJsonAsString() {
-        return "model=" + itemMatch.json() + "\n";
+    private void writeModelJson(@NotNull final PropertiesWriter out) {
+        out.append("model=").append(itemMatch.json()).append('\n');
     }
 
     @NotNull
@@ -81,81 +83,83 @@ public class CITModelPropertyFile implements CITPropertyFile {
         return type;
     }
 
-    @NotNull
-    private String modelTypeAsString() {
-        return "type=" + Objects.requireNonNull(TextureType.of(type)) + "\n";
+    private void writeModelType(@NotNull final PropertiesWriter out) {
+        out.append("type=").append(Objects.requireNonNull(TextureType.of(type)).toString()).append('\n');
     }
 
-    @NotNull
-    public String compile() {
-        return modelTypeAsString()
-                + itemMatchAsString()
-                + modelJsonAsString()
-                + nbtMatchAsString()
-                + weightAsString();
+    public void compile(@NotNull final PropertiesWriter out) {
+        writeModelType(out);
+        writeItemMatch(out);
+        writeModelJson(out);
+        writeNbtMatch(out);
+        writeWeight(out);
     }
 
     @NotNull
     private static Map<String, Set<PackPredicate>> jsonFileMap(@NotNull final PackMatchPredicate matchPredicate) {
-        final Map<String, Set<PackPredicate>> textureFileMap = new HashMap<>();
+        final Map<String, Set<PackPredicate>> textureFileMap = new LinkedHashMap<>();
         matchPredicate.predicates()
                 .stream()
                 .filter(p -> p instanceof PackItemModelPredicate)
                 .map(p -> (PackItemModelPredicate) p)
                 .forEach(p -> {
-                    textureFileMap.putIfAbsent(p.json(), new HashSet<>());
+                    textureFileMap.putIfAbsent(p.json(), new LinkedHashSet<>());
                     textureFileMap.get(p.json()).add(p);
                 });
         return textureFileMap;
     }
 
     @NotNull
-    private static Set<ItemModelMatch> matchAll(@NotNull final Collection<PackPredicate> predicates) {
+    private static Set<ItemModelMatch> matchAll(@NotNull final Collection<PackPredicate> predicates, @NotNull final ItemExpansionCache items) {
         return predicates.stream()
                 .filter(p -> p instanceof PackItemModelPredicate)
                 .map(p -> (PackItemModelPredicate) p)
-                .map(p -> new ItemModelMatch(p.json(), p.type(), new HashSet<>(), true))
-                .collect(Collectors.toSet());
+                .map(p -> new ItemModelMatch(p.json(), p.type(), ItemSet.empty(items.registry()), true))
+                .collect(Collectors.toCollection(LinkedHashSet::new));
     }
 
     @NotNull
-    private static ItemModelMatch findItemMatches(@NotNull final PackPredicate p, @NotNull final Logger logger) {
+    private static ItemModelMatch findItemMatches(@NotNull final PackPredicate p, @NotNull final ItemExpansionCache items, @NotNull final Logger logger) {
         final PackItemModelPredicate modelPredicate = (PackItemModelPredicate) p;
-        return new ItemModelMatch(modelPredicate.json(), modelPredicate.type(), new ArrayList<>(CITPropertyFile.findItemsMatchingPredicate(p, logger)), false);
+        return new ItemModelMatch(modelPredicate.json(), modelPredicate.type(), CITPropertyFile.findItemsMatchingPredicate(p, items, logger), false);
     }
 
     @NotNull
-    private static Set<ItemModelMatch> findMatches(@NotNull final Collection<PackPredicate> predicates, @NotNull final Logger logger) {
+    private static Set<ItemModelMatch> findMatches(@NotNull final Collection<PackPredicate> predicates, @NotNull final ItemExpansionCache items,
+                                                   @NotNull final Logger logger) {
         return predicates.stream()
-                .map(p -> findItemMatches(p, logger))
-                .collect(Collectors.toSet());
+                .map(p -> findItemMatches(p, items, logger))
+                .collect(Collectors.toCollection(LinkedHashSet::new));
     }
 
     @NotNull
     private static Map<PredicateType, List<ItemModelMatch>> findMatches(@NotNull final Map<String, Set<PackPredicate>> jsonFileMap,
-                                                                        @NotNull final PackMatchPredicate matchPredicate, @NotNull final Logger logger) {
+                                                                        @NotNull final PackMatchPredicate matchPredicate, @NotNull final ItemExpansionCache items,
+                                                                        @NotNull final Logger logger) {
+        final boolean matchHasKeys = matchPredicate.hasKeys();
         return jsonFileMap.keySet().stream().map(s -> {
                     final Collection<PackPredicate> packPredicates = jsonFileMap.get(s);
-                    final boolean setall = CITPropertyFile.isSettingAll(packPredicates, matchPredicate);
-                    return setall ? matchAll(packPredicates) : findMatches(packPredicates, logger);
+                    final boolean setall = CITPropertyFile.isSettingAll(packPredicates, matchHasKeys);
+                    return setall ? matchAll(packPredicates, items) : findMatches(packPredicates, items, logger);
                 })
                 .flatMap(Collection::stream)
-                .collect(Collectors.groupingBy(ItemModelMatch::type));
+                .collect(Collectors.groupingBy(ItemModelMatch::type, LinkedHashMap::new, Collectors.toList()));
     }
 
     @NotNull
-    public static Set<CITModelPropertyFile> of(@NotNull final PackMatchPredicate matchPredicate, @NotNull final Logger logger) {
+    public static Set<CITModelPropertyFile> of(@NotNull final PackMatchPredicate matchPredicate, @NotNull final ItemExpansionCache items,
+                                               @NotNull final Logger logger) {
         final Map<String, Set<PackPredicate>> jsonFileMap = jsonFileMap(matchPredicate);
-        final Map<PredicateType, List<ItemModelMatch>> itemMatches = findMatches(jsonFileMap, matchPredicate, logger);
+        final Map<PredicateType, List<ItemModelMatch>> itemMatches = findMatches(jsonFileMap, matchPredicate, items, logger);
 
         return itemMatches.keySet()
                 .stream()
                 .map(t -> itemMatches.get(t)
                         .stream()
                         .map(i -> new CITModelPropertyFile(t, i.json(), i, matchPredicate.matchPredicates(), matchPredicate.weight()))
-                        .collect(Collectors.toSet()))
+                        .collect(Collectors.toCollection(LinkedHashSet::new)))
                 .flatMap(Collection::stream)
-                .collect(Collectors.toSet());
+                .collect(Collectors.toCollection(LinkedHashSet::new));
     }
 
     @NotNull
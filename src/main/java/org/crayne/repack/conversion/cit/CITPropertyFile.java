@@ -1,8 +1,9 @@
 package org.crayne.repack.conversion.cit;
 
-import org.apache.commons.lang3.tuple.Pair;
 import org.crayne.repack.conversion.match.ItemMatch;
-import org.crayne.repack.conversion.util.VanillaItem;
+import org.crayne.repack.conversion.util.ItemExpansionCache;
+import org.crayne.repack.conversion.util.ItemSet;
+import org.crayne.repack.conversion.util.PropertiesWriter;
 import org.crayne.repack.core.single.predicate.PackMatchPredicate;
 import org.crayne.repack.core.single.predicate.PackPredicate;
 import org.crayne.repack.core.single.predicate.PackSimplePredicate;
@@ -12,7 +13,6 @@ import org.crayne.repack.util.logging.Logger;
 import org.crayne.repack.util.logging.LoggingLevel;
 import org.jetbrains.annotations.NotNull;
 
-import java.io.File;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -36,73 +36,66 @@ public interface CITPropertyFile {
 
     int weight();
 
-    @NotNull
-    String compile();
+    void compile(@NotNull final PropertiesWriter out);
 
     @NotNull
-    default String itemMatchAsString() {
-        return itemMatch().matchAll()
-                ? ""
-                : "items=" + String.join(" ", itemMatch().items()) + "\n";
+    default String compile() {
+        final PropertiesWriter out = new PropertiesWriter();
+        compile(out);
+        return out.toString();
     }
 
-    @NotNull
-    default String nbtMatchAsString() {
-        return predicates().stream()
-                .map(p -> "nbt." + p.key().token() + "=" + p.value())
-                .collect(Collectors.joining("\n")) + (weight() == 0 ? "" : "\n");
+    default void writeItemMatch(@NotNull final PropertiesWriter out) {
+        if (itemMatch().matchAll()) return;
+        writeItems(out, itemMatch().items());
     }
 
-    @NotNull
-    default String weightAsString() {
-        return weight() == 0 ? "" : "weight=" + weight();
+    static void writeItems(@NotNull final PropertiesWriter out, @NotNull final ItemSet items) {
+        out.append("items=");
+        final int start = out.size();
+        items.forEachName(name -> {
+            if (out.size() != start) out.append(' ');
+            out.append(name);
+        });
+        out.append('\n');
     }
 
-    static boolean isSettingAll(@NotNull final Collection<PackPredicate> packPredicates, @NotNull final PackMatchPredicate matchPredicate) {
-        return packPredicates.stream().anyMatch(p -> p instanceof PackSupredicate
-                || matchPredicate.keys().isEmpty()
-                || p.keys().stream().anyMatch(t -> t.token().equals("*")));
+    default void writeNbtMatch(@NotNull final PropertiesWriter out) {
+        final int start = out.size();
+        for (final PackSimplePredicate p : predicates()) {
+            if (out.size() != start) out.append('\n');
+            out.append("nbt.").append(p.key().token()).append('=').append(p.value());
+        }
+        if (weight() != 0) out.append('\n');
     }
 
-    @NotNull
-    default File finalizedFile(@NotNull final File cit) {
-        File file;
-        int copyNumber = 0;
-        do {
-            file = new File(cit, fileNameNoFiletype() + (copyNumber == 0 ? "" : String.valueOf(copyNumber)) + ".properties");
-            copyNumber++;
-        } while (file.exists());
-        return file;
+    default void writeWeight(@NotNull final PropertiesWriter out) {
+        if (weight() != 0) out.append("weight=").append(weight());
+    }
+
+    static boolean isSettingAll(@NotNull final Collection<PackPredicate> packPredicates, final boolean matchHasKeys) {
+        return packPredicates.stream().anyMatch(p -> p instanceof PackSupredicate
+                || !matchHasKeys
+                || p.keys().stream().anyMatch(t -> t.token().equals("*")));
     }
 
     @NotNull
-    static List<String> findItemsMatchingPredicate(@NotNull final PackPredicate p, @NotNull final Logger logger) {
-        return p.keys()
-                .stream()
-                .map(tok -> Pair.of(tok, VanillaItem.moddedItem(tok.token())
-                        ? Collections.singletonList(tok.token())
-                        : VanillaItem.allMatching(tok.token())
-                        .stream()
-                        .map(Enum::name)
-                        .toList())
-                )
-                .map(pair -> {
-                    final List<String> matched = pair.getRight();
-                    final Token tok = pair.getLeft();
-
-                    if (matched.isEmpty()) logger.traceback("No item matches were found for predicate key = '" + tok.token() + "'", tok, LoggingLevel.WARN);
-                    return matched;
-                })
-                .flatMap(Collection::stream)
-                .toList();
+    static ItemSet findItemsMatchingPredicate(@NotNull final PackPredicate p, @NotNull final ItemExpansionCache items, @NotNull final Logger logger) {
+        ItemSet result = ItemSet.empty(items.registry());
+        for (final Token tok : p.keys()) {
+            final ItemSet matched = items.expand(tok.token());
+            if (matched.isEmpty()) logger.traceback("No item matches were found for predicate key = '" + tok.token() + "'", tok, LoggingLevel.WARN);
+            result = result.union(matched);
+        }
+        return result;
     }
 
     @NotNull
-    static Set<CITPropertyFile> of(@NotNull final PackMatchPredicate matchPredicate, @NotNull final Logger logger) {
-        final Set<CITTexturePropertyFile> textureFiles = CITTexturePropertyFile.of(matchPredicate, logger);
-        final Set<CITModelPropertyFile> modelFiles = CITModelPropertyFile.of(matchPredicate, logger);
+    static Set<CITPropertyFile> of(@NotNull final PackMatchPredicate matchPredicate, @NotNull final ItemExpansionCache items, @NotNull final Logger logger) {
+        final Set<CITTexturePropertyFile> textureFiles = CITTexturePropertyFile.of(matchPredicate, items, logger);
+        final Set<CITModelPropertyFile> modelFiles = CITModelPropertyFile.of(matchPredicate, items, logger);
 
-        final Set<CITPropertyFile> result = new HashSet<>();
+        final Set<CITPropertyFile> result = new LinkedHashSet<>();
         result.addAll(textureFiles);
         result.addAll(modelFiles);
         return result;
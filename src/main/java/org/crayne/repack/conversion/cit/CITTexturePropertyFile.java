@@ -2,6 +2,9 @@ package org.crayne.repack.conversion.cit;
 
 import org.apache.commons.lang3.StringUtils;
 import org.crayne.repack.conversion.match.ItemTextureMatch;
+import org.crayne.repack.conversion.util.ItemExpansionCache;
+import org.crayne.repack.conversion.util.ItemSet;
+import org.crayne.repack.conversion.util.PropertiesWriter;
 import org.crayne.repack.conversion.util.TextureType;
 import org.crayne.repack.core.single.predicate.PackItemModelPredicate;
 import org.crayne.repack.core.single.predicate.PackMatchPredicate;
@@ -35,7 +38,7 @@ public class CITTexturePropertyFile implements CITPropertyFile {
         this.type = type;
         this.filePath = filePath;
         this.itemMatch = itemMatch;
-        this.predicates = new HashSet<>(predicates);
+        this.predicates = new LinkedHashSet<>(predicates);
         this.weight = weight;
     }
 
@@ -82,23 +85,27 @@ public class CITTexturePropertyFile implements CITPropertyFile {
     }
 
 
-    @NotNull
-    public String itemMatchAsString() {
-        if (itemMatch().matchAll()) return "";
-        return "items=" + String.join(" ", switch (type) {
-            case ARMOR_L1 -> itemMatch().items().stream().filter(s -> !s.toLowerCase().endsWith("_leggings")).toList();
-            case ARMOR_L2 -> itemMatch().items().stream().filter(s -> s.toLowerCase().endsWith("_leggings")).toList();
+    public void writeItemMatch(@NotNull final PropertiesWriter out) {
+        if (itemMatch().matchAll()) return;
+        final ItemSet items = switch (type) {
+            case ARMOR_L1 -> itemMatch().items().withoutLeggings();
+            case ARMOR_L2 -> itemMatch().items().leggings();
             default -> itemMatch().items();
-        }) + "\n";
+        };
+        CITPropertyFile.writeItems(out, items);
     }
 
-    @NotNull
-    public String compile() {
-        return textureTypeAsString()
-                + itemMatchAsString()
-                + textureOverrideAsString()
-                + nbtMatchAsString()
-                + weightAsString();
+    public void compile(@NotNull final PropertiesWriter out) {
+        compile(out, textureFileNameNoPNG());
+    }
+
+    // with the texture referenced under the given name (without '.png'), e.g. after it was deduplicated
+    public void compile(@NotNull final PropertiesWriter out, @NotNull final String texture) {
+        writeTextureType(out);
+        writeItemMatch(out);
+        writeTextureOverride(out, texture);
+        writeNbtMatch(out);
+        writeWeight(out);
     }
 
     @NotNull
@@ -107,82 +114,88 @@ public class CITTexturePropertyFile implements CITPropertyFile {
     }
 
     @NotNull
-    private static ItemTextureMatch findItemMatches(@NotNull final PackPredicate p, @NotNull final Logger logger) {
+    private static ItemTextureMatch findItemMatches(@NotNull final PackPredicate p, @NotNull final ItemExpansionCache items, @NotNull final Logger logger) {
         final TextureType textureType = TextureType.of(p.type());
         if (textureType == null) throw new RuntimeException("Match statement was found inside another");
 
-        return new ItemTextureMatch(p.value(), textureType, new ArrayList<>(CITPropertyFile.findItemsMatchingPredicate(p, logger)), false);
+        return new ItemTextureMatch(p.value(), textureType, CITPropertyFile.findItemsMatchingPredicate(p, items, logger), false);
     }
 
     @NotNull
-    private static Set<ItemTextureMatch> matchAll(@NotNull final Collection<PackPredicate> predicates) {
+    private static Set<ItemTextureMatch> matchAll(@NotNull final Collection<PackPredicate> predicates, @NotNull final ItemExpansionCache items) {
         return predicates.stream()
-                .map(p -> new ItemTextureMatch(p.value(), TextureType.of(p.type()), new HashSet<>(), true))
+                .map(p -> new ItemTextureMatch(p.value(), TextureType.of(p.type()), ItemSet.empty(items.registry()), true))
                 .peek(i -> Objects.requireNonNull(i.type()))
-                .collect(Collectors.toSet());
+                .collect(Collectors.toCollection(LinkedHashSet::new));
     }
 
     @NotNull
-    private static Set<ItemTextureMatch> findMatches(@NotNull final Collection<PackPredicate> predicates, @NotNull final Logger logger) {
+    private static Set<ItemTextureMatch> findMatches(@NotNull final Collection<PackPredicate> predicates, @NotNull final ItemExpansionCache items,
+                                                     @NotNull final Logger logger) {
         return predicates.stream()
-                .map(p -> findItemMatches(p, logger))
-                .collect(Collectors.toSet());
+                .map(p -> findItemMatches(p, items, logger))
+                .collect(Collectors.toCollection(LinkedHashSet::new));
     }
 
+    // where a texture ended up while grouping, so later matches of the same texture can be merged into it
+    private record GroupedMatch(@NotNull List<ItemTextureMatch> group, int index) {}
+
+    // every texture is only created once; matches of a texture that was already seen (no matter the texture type)
+    // add their items to the first match instead
     @NotNull
     private static Map<TextureType, List<ItemTextureMatch>> groupItemTextureMatches(@NotNull final Map<TextureType, List<ItemTextureMatch>> ungrouped) {
-        final Map<TextureType, List<ItemTextureMatch>> itemMatchesGrouped = new HashMap<>();
-
-        ungrouped.forEach((t, is) -> {
-            final List<ItemTextureMatch> found = ungrouped.get(t);
-            found.forEach(i -> {
-                final Optional<ItemTextureMatch> existingMatch = itemMatchesGrouped.values().stream()
-                        .map(i2 -> i2.stream().filter(i3 -> i3.texture().equals(i.texture())).findAny())
-                        .filter(Optional::isPresent)
-                        .flatMap(Optional::stream)
-                        .findAny();
-
-                itemMatchesGrouped.putIfAbsent(t, new ArrayList<>());
-
-                if (existingMatch.isPresent()) {
-                    existingMatch.get().items().addAll(i.items());
-                    return;
+        final Map<TextureType, List<ItemTextureMatch>> itemMatchesGrouped = new LinkedHashMap<>();
+        final Map<String, GroupedMatch> byTexture = new HashMap<>();
+
+        ungrouped.forEach((t, found) -> {
+            final List<ItemTextureMatch> group = itemMatchesGrouped.computeIfAbsent(t, k -> new ArrayList<>());
+            for (final ItemTextureMatch i : found) {
+                final GroupedMatch existing = byTexture.get(i.texture());
+                if (existing == null) {
+                    byTexture.put(i.texture(), new GroupedMatch(group, group.size()));
+                    group.add(i);
+                    continue;
                 }
-                itemMatchesGrouped.get(t).add(i);
-            });
+                final ItemTextureMatch merged = existing.group().get(existing.index());
+                existing.group().set(existing.index(), new ItemTextureMatch(merged.texture(), merged.type(),
+                        merged.items().union(i.items()), merged.matchAll()));
+            }
         });
         return itemMatchesGrouped;
     }
 
     @NotNull
     private static Map<TextureType, List<ItemTextureMatch>> findMatches(@NotNull final Map<String, Set<PackPredicate>> textureFileMap,
-                                                                        @NotNull final PackMatchPredicate matchPredicate, @NotNull final Logger logger) {
+                                                                        @NotNull final PackMatchPredicate matchPredicate, @NotNull final ItemExpansionCache items,
+                                                                        @NotNull final Logger logger) {
+        final boolean matchHasKeys = matchPredicate.hasKeys();
         return textureFileMap.keySet().stream().map(s -> {
                     final Collection<PackPredicate> packPredicates = textureFileMap.get(s);
-                    final boolean setall = CITPropertyFile.isSettingAll(packPredicates, matchPredicate);
-                    return setall ? matchAll(packPredicates) : findMatches(packPredicates, logger);
+                    final boolean setall = CITPropertyFile.isSettingAll(packPredicates, matchHasKeys);
+                    return setall ? matchAll(packPredicates, items) : findMatches(packPredicates, items, logger);
                 })
                 .flatMap(Collection::stream)
-                .collect(Collectors.groupingBy(ItemTextureMatch::type));
+                .collect(Collectors.groupingBy(ItemTextureMatch::type, LinkedHashMap::new, Collectors.toList()));
     }
 
     @NotNull
     private static Map<String, Set<PackPredicate>> textureFileMap(@NotNull final PackMatchPredicate matchPredicate) {
-        final Map<String, Set<PackPredicate>> textureFileMap = new HashMap<>();
+        final Map<String, Set<PackPredicate>> textureFileMap = new LinkedHashMap<>();
         matchPredicate.predicates()
                 .stream()
                 .filter(p -> !(p instanceof PackItemModelPredicate))
                 .forEach(p -> {
-            textureFileMap.putIfAbsent(p.value(), new HashSet<>());
+            textureFileMap.putIfAbsent(p.value(), new LinkedHashSet<>());
             textureFileMap.get(p.value()).add(p);
         });
         return textureFileMap;
     }
 
     @NotNull
-    public static Set<CITTexturePropertyFile> of(@NotNull final PackMatchPredicate matchPredicate, @NotNull final Logger logger) {
+    public static Set<CITTexturePropertyFile> of(@NotNull final PackMatchPredicate matchPredicate, @NotNull final ItemExpansionCache items,
+                                                 @NotNull final Logger logger) {
         final Map<String, Set<PackPredicate>> textureFileMap = textureFileMap(matchPredicate);
-        final Map<TextureType, List<ItemTextureMatch>> itemMatches = findMatches(textureFileMap, matchPredicate, logger);
+        final Map<TextureType, List<ItemTextureMatch>> itemMatches = findMatches(textureFileMap, matchPredicate, items, logger);
         final Map<TextureType, List<ItemTextureMatch>> itemMatchesGrouped = groupItemTextureMatches(itemMatches);
 
         return itemMatchesGrouped.keySet()
@@ -190,49 +203,45 @@ public class CITTexturePropertyFile implements CITPropertyFile {
                 .map(t -> itemMatchesGrouped.get(t)
                         .stream()
                         .map(i -> new CITTexturePropertyFile(t, i.texture(), i, matchPredicate.matchPredicates(), matchPredicate.weight()))
-                        .collect(Collectors.toSet()))
+                        .collect(Collectors.toCollection(LinkedHashSet::new)))
                 .flatMap(Collection::stream)
-                .collect(Collectors.toSet());
+                .collect(Collectors.toCollection(LinkedHashSet::new));
     }
 
-    @NotNull
-    private String textureNamespacedKey(@NotNull final TextureType type, @NotNull final String s, @NotNull final String value) {
-        return switch (type) {
-            case ARMOR -> {
-                final String armor = StringUtils.substringBefore(s, "_");
-                yield "texture." + armor + "_layer_1" + "=" + value + "\n" + "texture." + armor + "_layer_2" + "=" + value;
-            }
-            case ARMOR_L1 -> {
-                final String armor = StringUtils.substringBefore(s, "_");
-                yield "texture." + armor + "_layer_1" + "=" + value;
-            }
-            case ARMOR_L2 -> {
-                final String armor = StringUtils.substringBefore(s, "_");
-                yield "texture." + armor + "_layer_2" + "=" + value;
-            }
-            case ELYTRAS -> "texture.elytra" + "=" + value;
-            case ITEMS -> "texture." + s + "=" + value;
+    // every armor material and the elytra only get their override once, no matter how many of their items are matched
+    private static void writeNamespacedKey(@NotNull final PropertiesWriter out, final int start, @NotNull final TextureType type,
+                                           @NotNull final String s, @NotNull final String value) {
+        final String key = switch (type) {
+            case ARMOR, ARMOR_L1, ARMOR_L2 -> StringUtils.substringBefore(s, "_");
+            case ELYTRAS -> "elytra";
+            case ITEMS -> s;
         };
-    }
-
-    @NotNull
-    private String textureOverrideAsString() {
-        if (itemMatch.matchAll()) return "texture=" + textureFileNameNoPNG() + "\n";
-        final List<String> overrides = itemMatch.items()
-                .stream()
-                .map(s -> {
-                    assert itemMatch.type() != null;
-                    return textureNamespacedKey(itemMatch.type(), s, textureFileNameNoPNG());
-                })
-                .distinct()
-                .toList();
-
-        return String.join("\n", overrides) + "\n";
-    }
-
-    @NotNull
-    private String textureTypeAsString() {
-        return "type=" + type + "\n";
+        if (type != TextureType.ITEMS && !out.once(key)) return;
+        if (out.size() != start) out.append('\n');
+        switch (type) {
+            case ARMOR -> out.append("texture.").append(key).append("_layer_1=").append(value)
+                    .append("\ntexture.").append(key).append("_layer_2=").append(value);
+            case ARMOR_L1 -> out.append("texture.").append(key).append("_layer_1=").append(value);
+            case ARMOR_L2 -> out.append("texture.").append(key).append("_layer_2=").append(value);
+            case ELYTRAS -> out.append("texture.elytra=").append(value);
+            case ITEMS -> out.append("texture.").append(s).append('=').append(value);
+        }
+    }
+
+    private void writeTextureOverride(@NotNull final PropertiesWriter out, @NotNull final String texture) {
+        if (itemMatch.matchAll()) {
+            out.append("texture=").append(texture).append('\n');
+            return;
+        }
+        final TextureType itemType = itemMatch.type();
+        assert itemType != null;
+        final int start = out.size();
+        itemMatch.items().forEachName(s -> writeNamespacedKey(out, start, itemType, s, texture));
+        out.append('\n');
+    }
+
+    private void writeTextureType(@NotNull final PropertiesWriter out) {
+        out.append("type=").append(type.toString()).append('\n');
     }
 
 }
@@ -1,14 +1,13 @@
 package org.crayne.repack.conversion.match;
 
+import org.crayne.repack.conversion.util.ItemSet;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.Collection;
-
 public interface ItemMatch {
 
     boolean matchAll();
 
     @NotNull
-    Collection<String> items();
+    ItemSet items();
 
 }
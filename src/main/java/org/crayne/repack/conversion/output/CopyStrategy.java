@@ -0,0 +1,72 @@
+package org.crayne.repack.conversion.output;
+
+import org.crayne.repack.core.CompileProfiler;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+// how files of the workspace (textures, copy statement sources) end up in a directory output.
+// a strategy that does not work for some file falls back to the next one, down to a plain copy
+public enum CopyStrategy {
+
+    // a plain copy through the file system, like before
+    COPY("copy", "copied", CompileProfiler.Counter.BYTES_COPIED),
+
+    // the kernel copies the bytes from one file channel to the other, without passing them through the jvm
+    TRANSFER("transfer", "transferred", CompileProfiler.Counter.BYTES_TRANSFERRED),
+
+    // the output shares the data blocks of the source until one of them is changed (btrfs, xfs, apfs, ...)
+    REFLINK("reflink", "reflinked", CompileProfiler.Counter.BYTES_REFLINKED),
+
+    // the output file is the source file. nothing is copied at all, but changing one changes the other, so this is meant for local testing
+    HARDLINK("hardlink", "hard linked", CompileProfiler.Counter.BYTES_HARD_LINKED);
+
+    @NotNull
+    private final String optionName;
+
+    @NotNull
+    private final String pastTense;
+
+    @NotNull
+    private final CompileProfiler.Counter counter;
+
+    CopyStrategy(@NotNull final String optionName, @NotNull final String pastTense, @NotNull final CompileProfiler.Counter counter) {
+        this.optionName = optionName;
+        this.pastTense = pastTense;
+        this.counter = counter;
+    }
+
+    @NotNull
+    public String optionName() {
+        return optionName;
+    }
+
+    @NotNull
+    public String pastTense() {
+        return pastTense;
+    }
+
+    // the profiler counter of the bytes that were moved this way
+    @NotNull
+    public CompileProfiler.Counter counter() {
+        return counter;
+    }
+
+    // what is tried next for a file this strategy cannot handle
+    @Nullable
+    public CopyStrategy fallback() {
+        return switch (this) {
+            case HARDLINK, REFLINK -> TRANSFER;
+            case TRANSFER -> COPY;
+            case COPY -> null;
+        };
+    }
+
+    @NotNull
+    public static Optional<CopyStrategy> of(@NotNull final String name) {
+        return Arrays.stream(values()).filter(s -> s.optionName.equalsIgnoreCase(name)).findAny();
+    }
+
+}
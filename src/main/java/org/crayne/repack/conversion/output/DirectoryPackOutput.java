@@ -0,0 +1,171 @@
+package org.crayne.repack.conversion.output;
+
+import org.apache.commons.io.FileUtils;
+import org.crayne.repack.conversion.util.PropertiesWriter;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+public class DirectoryPackOutput implements PackOutput {
+
+    @NotNull
+    private final File root;
+
+    // path -> fingerprint of every file the previous build wrote into this directory, empty if there was none
+    @NotNull
+    private final Map<String, String> previous;
+
+    @NotNull
+    private final Map<String, String> written;
+
+    @NotNull
+    private final LongAdder unchanged;
+
+    @NotNull
+    private final FileCopier copier;
+
+    // deletes any previous output in the given directory
+    public DirectoryPackOutput(@NotNull final File root, @NotNull final FileCopier copier) throws IOException {
+        this(root, new HashMap<>(), copier);
+    }
+
+    // keeps the files of the previous build described by the given fingerprints and only writes what changed since.
+    // without fingerprints, any previous output is deleted. the fingerprints are updated once the output is finished
+    public DirectoryPackOutput(@NotNull final File root, @NotNull final Map<String, String> previous, @NotNull final FileCopier copier) throws IOException {
+        this.root = root;
+        this.previous = previous;
+        this.written = new ConcurrentHashMap<>();
+        this.unchanged = new LongAdder();
+        this.copier = copier;
+        if (previous.isEmpty() && root.isDirectory()) FileUtils.deleteDirectory(root);
+        Files.createDirectories(root.toPath());
+    }
+
+    @NotNull
+    public File root() {
+        return root;
+    }
+
+    @NotNull
+    public FileCopier copier() {
+        return copier;
+    }
+
+    // amount of files that were already up to date from the previous build
+    public long unchanged() {
+        return unchanged.sum();
+    }
+
+    // amount of files that are part of this build, including unchanged ones
+    public int written() {
+        return written.size();
+    }
+
+    @NotNull
+    private File file(@NotNull final String path) {
+        return new File(root, PackOutput.normalize(path));
+    }
+
+    public boolean exists(@NotNull final String path) {
+        return written.containsKey(PackOutput.normalize(path));
+    }
+
+    // remembers the fingerprint of the given path and tells whether the file is still the same as after the previous build
+    private boolean upToDate(@NotNull final String path, @NotNull final File file, @NotNull final String fingerprint) {
+        written.put(PackOutput.normalize(path), fingerprint);
+        if (!fingerprint.equals(previous.get(PackOutput.normalize(path))) || !file.isFile()) return false;
+        unchanged.increment();
+        return true;
+    }
+
+    public void write(@NotNull final String path, @NotNull final byte[] content) throws IOException {
+        final File file = file(path);
+        if (upToDate(path, file, "sha1 " + sha1(content))) return;
+        Files.createDirectories(file.getParentFile().toPath());
+        // the old file might be a hard link to a source, which must not be overwritten
+        Files.deleteIfExists(file.toPath());
+        Files.write(file.toPath(), content);
+    }
+
+    // written straight from the buffer of the writer, without copying it first
+    public void write(@NotNull final String path, @NotNull final PropertiesWriter content) throws IOException {
+        final File file = file(path);
+        if (upToDate(path, file, "sha1 " + sha1(content.bytes()))) return;
+        Files.createDirectories(file.getParentFile().toPath());
+        Files.deleteIfExists(file.toPath());
+        try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW)) {
+            final ByteBuffer bytes = content.bytes();
+            while (bytes.hasRemaining()) channel.write(bytes);
+        }
+    }
+
+    public void copy(@NotNull final File source, @NotNull final String path) throws IOException {
+        final File file = file(path);
+        if (upToDate(path, file, "file " + source.getAbsolutePath() + " " + source.length() + " " + source.lastModified())) return;
+        Files.createDirectories(file.getParentFile().toPath());
+        copier.copy(source.toPath(), file.toPath());
+    }
+
+    @NotNull
+    private static String sha1(@NotNull final byte[] content) throws IOException {
+        return sha1(ByteBuffer.wrap(content));
+    }
+
+    @NotNull
+    private static String sha1(@NotNull final ByteBuffer content) throws IOException {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(content);
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IOException("SHA-1 is not supported by this JVM", e);
+        }
+    }
+
+    @NotNull
+    public String describe(@NotNull final String path) {
+        return file(path).getAbsolutePath();
+    }
+
+    // removes whatever the previous build wrote that is not part of this one anymore
+    public void finish() throws IOException {
+        for (final String path : previous.keySet()) {
+            if (written.containsKey(path)) continue;
+            final File file = file(path);
+            Files.deleteIfExists(file.toPath());
+            for (File parent = file.getParentFile(); !parent.equals(root) && isEmptyDirectory(parent); parent = parent.getParentFile()) {
+                Files.delete(parent.toPath());
+            }
+        }
+        previous.clear();
+        previous.putAll(written);
+    }
+
+    private static boolean isEmptyDirectory(@NotNull final File directory) {
+        final String[] children = directory.list();
+        return children != null && children.length == 0;
+    }
+
+    public void discard() throws IOException {
+        previous.clear();
+        if (root.isDirectory()) FileUtils.deleteDirectory(root);
+    }
+
+    @NotNull
+    public String toString() {
+        return root.getAbsolutePath();
+    }
+
+}
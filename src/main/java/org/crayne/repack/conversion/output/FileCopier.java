@@ -0,0 +1,184 @@
+package org.crayne.repack.conversion.output;
+
+import org.apache.commons.io.FileUtils;
+import org.crayne.repack.core.CompileProfiler;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// copies files into a directory output with the chosen strategy, and counts the files and bytes moved by each one.
+// a strategy that fails once (e.g. hard links across file systems) is not tried again for the rest of the compile
+public class FileCopier {
+
+    private enum Probe { PENDING, RUNNING, DONE }
+
+    @NotNull
+    private final CopyStrategy strategy;
+
+    @NotNull
+    private final Map<CopyStrategy, String> unsupported;
+
+    @NotNull
+    private final LongAdder[] files, bytes;
+
+    // every reflink starts a cp process, so the first one is the only one tried until it is known whether the file system can
+    // clone at all. otherwise every concurrent copy would start a cp that fails, before the first failure is even noticed
+    @NotNull
+    private Probe reflinkProbe;
+
+    public FileCopier(@NotNull final CopyStrategy strategy) {
+        this.strategy = strategy;
+        this.reflinkProbe = Probe.PENDING;
+        this.unsupported = new ConcurrentHashMap<>();
+        this.files = new LongAdder[CopyStrategy.values().length];
+        this.bytes = new LongAdder[CopyStrategy.values().length];
+        for (int i = 0; i < files.length; i++) {
+            files[i] = new LongAdder();
+            bytes[i] = new LongAdder();
+        }
+    }
+
+    @NotNull
+    public CopyStrategy strategy() {
+        return strategy;
+    }
+
+    public long files(@NotNull final CopyStrategy strategy) {
+        return files[strategy.ordinal()].sum();
+    }
+
+    public long bytes(@NotNull final CopyStrategy strategy) {
+        return bytes[strategy.ordinal()].sum();
+    }
+
+    // why the given strategy was given up on, if it was
+    @NotNull
+    public Optional<String> unsupported(@NotNull final CopyStrategy strategy) {
+        return Optional.ofNullable(unsupported.get(strategy));
+    }
+
+    // replaces the target, if it exists. returns the strategy that was actually used
+    @NotNull
+    public CopyStrategy copy(@NotNull final Path source, @NotNull final Path target) throws IOException {
+        // never write through an existing file, since it might be a hard link to a source
+        Files.deleteIfExists(target);
+        for (CopyStrategy current = strategy; current != null; current = current.fallback()) {
+            if (current != CopyStrategy.COPY && unsupported.containsKey(current)) continue;
+            try {
+                final long size = current == CopyStrategy.REFLINK ? probedReflink(source, target) : copy(current, source, target);
+                files[current.ordinal()].increment();
+                bytes[current.ordinal()].add(size);
+                return current;
+            } catch (final IOException | UnsupportedOperationException e) {
+                if (current == CopyStrategy.COPY) throw e;
+                unsupported.putIfAbsent(current, Objects.requireNonNullElse(e.getMessage(), e.getClass().getSimpleName()));
+                Files.deleteIfExists(target);
+            }
+        }
+        throw new IllegalStateException("every copy strategy falls back to a plain copy");
+    }
+
+    private long probedReflink(@NotNull final Path source, @NotNull final Path target) throws IOException {
+        final boolean probing;
+        synchronized (this) {
+            while (reflinkProbe == Probe.RUNNING) {
+                try {
+                    wait();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for the first reflink", e);
+                }
+            }
+            if (unsupported.containsKey(CopyStrategy.REFLINK)) throw new UnsupportedOperationException(unsupported.get(CopyStrategy.REFLINK));
+            probing = reflinkProbe == Probe.PENDING;
+            if (probing) reflinkProbe = Probe.RUNNING;
+        }
+        if (!probing) return reflink(source, target);
+        try {
+            return reflink(source, target);
+        } catch (final IOException | UnsupportedOperationException e) {
+            unsupported.putIfAbsent(CopyStrategy.REFLINK, Objects.requireNonNullElse(e.getMessage(), e.getClass().getSimpleName()));
+            throw e;
+        } finally {
+            synchronized (this) {
+                reflinkProbe = Probe.DONE;
+                notifyAll();
+            }
+        }
+    }
+
+    private static long copy(@NotNull final CopyStrategy strategy, @NotNull final Path source, @NotNull final Path target) throws IOException {
+        return switch (strategy) {
+            case HARDLINK -> {
+                Files.createLink(target, source);
+                yield Files.size(target);
+            }
+            case REFLINK -> reflink(source, target);
+            case TRANSFER -> transfer(source, target);
+            case COPY -> {
+                Files.copy(source, target);
+                yield Files.size(target);
+            }
+        };
+    }
+
+    private static long transfer(@NotNull final Path source, @NotNull final Path target) throws IOException {
+        try (final FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             final FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW)) {
+            final long size = in.size();
+            long position = 0;
+            while (position < size) {
+                final long transferred = in.transferTo(position, size - position, out);
+                // the source got shorter while copying
+                if (transferred <= 0) break;
+                position += transferred;
+            }
+            return position;
+        }
+    }
+
+    // java has no api for cloning a file, so this is left to cp, which fails instead of copying if the file system cannot clone
+    private static long reflink(@NotNull final Path source, @NotNull final Path target) throws IOException {
+        final String os = System.getProperty("os.name", "").toLowerCase(Locale.ROOT);
+        final List<String> command;
+        if (os.contains("linux")) command = List.of("cp", "--reflink=always", "--", source.toString(), target.toString());
+        else if (os.contains("mac")) command = List.of("cp", "-c", source.toString(), target.toString());
+        else throw new UnsupportedOperationException("reflinks are not supported on " + System.getProperty("os.name"));
+
+        final Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        try {
+            final String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8).trim();
+            if (process.waitFor() != 0) throw new IOException(output.isEmpty() ? "cp exited with " + process.exitValue() : output);
+        } catch (final InterruptedException e) {
+            process.destroy();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while cloning '" + source + "'", e);
+        }
+        return Files.size(target);
+    }
+
+    public void count(@NotNull final CompileProfiler profiler) {
+        for (final CopyStrategy used : CopyStrategy.values()) profiler.count(used.counter(), bytes(used));
+    }
+
+    // e.g. "hard linked 12 files (3 MB), copied 1 file (12 KB)", or empty if nothing was copied
+    @NotNull
+    public Optional<String> report() {
+        final StringJoiner report = new StringJoiner(", ");
+        for (final CopyStrategy used : CopyStrategy.values()) {
+            final long count = files(used);
+            if (count == 0) continue;
+            report.add(used.pastTense() + " " + count + " file" + (count == 1 ? "" : "s") + " (" + FileUtils.byteCountToDisplaySize(bytes(used)) + ")");
+        }
+        return report.length() == 0 ? Optional.empty() : Optional.of(report.toString());
+    }
+
+}
@@ -0,0 +1,21 @@
+package org.crayne.repack.conversion.output;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+public enum OutputMode {
+
+    // entries are written straight into '<out>.zip'; no output directory is created
+    ZIP,
+
+    // the pack is written into the output directory as plain files
+    DIRECTORY;
+
+    @NotNull
+    public static Optional<OutputMode> of(@NotNull final String name) {
+        return Arrays.stream(values()).filter(m -> m.name().equalsIgnoreCase(name)).findAny();
+    }
+
+}
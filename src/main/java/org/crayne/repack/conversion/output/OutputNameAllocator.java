@@ -0,0 +1,55 @@
+package org.crayne.repack.conversion.output;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+// hands out unique output paths (sword.properties, sword1.properties, sword2.properties, ...) without ever looking at the output.
+// every name remembers the next number to try, so many files with the same name do not probe all of the taken numbers again.
+// names are handed out in the order they are asked for, so the same plan always gets the same names. not thread safe
+public class OutputNameAllocator {
+
+    @NotNull
+    private final Predicate<String> reserved;
+
+    @NotNull
+    private final Set<String> taken;
+
+    @NotNull
+    private final Map<String, Integer> next;
+
+    public OutputNameAllocator() {
+        this(path -> false);
+    }
+
+    // never hands out a path the given predicate is true for, e.g. one that a copy statement already wrote to
+    public OutputNameAllocator(@NotNull final Predicate<String> reserved) {
+        this.reserved = reserved;
+        this.taken = new HashSet<>();
+        this.next = new HashMap<>();
+    }
+
+    // e.g. ("assets/minecraft/optifine/cit/sword", ".properties") -> "assets/minecraft/optifine/cit/sword1.properties"
+    @NotNull
+    public String allocate(@NotNull final String base, @NotNull final String extension) {
+        final String key = base + extension;
+        int number = next.getOrDefault(key, 0);
+        String path;
+        do {
+            path = base + (number == 0 ? "" : String.valueOf(number)) + extension;
+            number++;
+        } while (reserved.test(path) || !taken.add(path));
+        next.put(key, number);
+        return path;
+    }
+
+    // amount of paths handed out so far
+    public int allocated() {
+        return taken.size();
+    }
+
+}
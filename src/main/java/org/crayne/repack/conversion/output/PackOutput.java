@@ -0,0 +1,54 @@
+package org.crayne.repack.conversion.output;
+
+import org.crayne.repack.conversion.util.PropertiesWriter;
+import org.crayne.repack.conversion.util.ZipWriter;
+import org.crayne.repack.core.CompileOptions;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.StringJoiner;
+
+// where a compiled pack ends up. paths are relative to the pack root and always use '/' as separator
+public interface PackOutput {
+
+    boolean exists(@NotNull final String path);
+
+    void write(@NotNull final String path, @NotNull final byte[] content) throws IOException;
+
+    // outputs that keep the content around get their own copy of it, so the writer can be reused right away
+    default void write(@NotNull final String path, @NotNull final PropertiesWriter content) throws IOException {
+        write(path, content.toByteArray());
+    }
+
+    void copy(@NotNull final File source, @NotNull final String path) throws IOException;
+
+    // a human-readable location of the given path, for log messages
+    @NotNull
+    String describe(@NotNull final String path);
+
+    // makes everything that was written available; nothing may be written afterwards
+    void finish() throws IOException;
+
+    // throws away everything that was written so far, after a failed compilation
+    void discard() throws IOException;
+
+    @NotNull
+    static PackOutput of(@NotNull final CompileOptions options, @NotNull final File out) throws IOException {
+        return switch (options.output()) {
+            case ZIP -> new ZipPackOutput(new File(out.getPath() + ".zip"), new ZipWriter(options.compressionLevel(), options.threads()));
+            case DIRECTORY -> new SyncPackOutput(out, new FileCopier(options.copy()), options.ioLimit());
+        };
+    }
+
+    // a/./b\c//d -> a/b/c/d
+    @NotNull
+    static String normalize(@NotNull final String path) {
+        final StringJoiner result = new StringJoiner("/");
+        for (final String part : path.replace('\\', '/').split("/")) {
+            if (!part.isEmpty() && !part.equals(".")) result.add(part);
+        }
+        return result.toString();
+    }
+
+}
@@ -0,0 +1,241 @@
+package org.crayne.repack.conversion.output;
+
+import org.apache.commons.io.FileUtils;
+import org.crayne.repack.conversion.util.ZipWriter;
+import org.crayne.repack.core.IoExecutor;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+// collects the whole pack in memory and then syncs it with what is already in the output folder. the new tree is built in a staging
+// folder beside the output, where every file whose content did not change is a hard link to the old one, so only changed files are
+// actually written. the staging folder then takes the place of the old tree, which is deleted in the background.
+// until then the old output is never touched, so a failed compile leaves it as it was
+public class SyncPackOutput implements PackOutput {
+
+    @NotNull
+    public static final String STAGING = ".repack-staging", RETIRED = ".repack-old";
+
+    // the old trees that are still being deleted, by the folder they were moved to. every output has its own, so syncing
+    // one output never has to wait for another one, but always for its own previous sync
+    @NotNull
+    private static final Map<Path, Thread> cleanups = new HashMap<>();
+
+    @NotNull
+    private final File root;
+
+    @NotNull
+    private final Map<String, ZipWriter.Source> entries;
+
+    @NotNull
+    private final FileCopier copier;
+
+    private final int ioLimit;
+
+    private int unchanged, changed, removed;
+
+    // false once the file system refused a hard link
+    private volatile boolean linking;
+
+    // the staging folder is filled by up to 'ioLimit' concurrent file operations
+    public SyncPackOutput(@NotNull final File root, @NotNull final FileCopier copier, final int ioLimit) {
+        // normalized, so every way of naming the same output waits for the same cleanup
+        this.root = root.toPath().toAbsolutePath().normalize().toFile();
+        this.entries = new LinkedHashMap<>();
+        this.copier = copier;
+        this.ioLimit = ioLimit;
+    }
+
+    @NotNull
+    public File root() {
+        return root;
+    }
+
+    @NotNull
+    public FileCopier copier() {
+        return copier;
+    }
+
+    // amount of files that kept their content and were taken over from the old output
+    public int unchanged() {
+        return unchanged;
+    }
+
+    // amount of files that were new or changed
+    public int changed() {
+        return changed;
+    }
+
+    // amount of files of the old output that are not part of the new one anymore
+    public int removed() {
+        return removed;
+    }
+
+    public synchronized boolean exists(@NotNull final String path) {
+        return entries.containsKey(PackOutput.normalize(path));
+    }
+
+    public synchronized void write(@NotNull final String path, @NotNull final byte[] content) {
+        final String name = PackOutput.normalize(path);
+        entries.put(name, ZipWriter.Source.of(name, content));
+    }
+
+    public synchronized void copy(@NotNull final File source, @NotNull final String path) {
+        final String name = PackOutput.normalize(path);
+        entries.put(name, ZipWriter.Source.of(name, source));
+    }
+
+    @NotNull
+    public String describe(@NotNull final String path) {
+        return new File(root, PackOutput.normalize(path)).getAbsolutePath();
+    }
+
+    @NotNull
+    private File sibling(@NotNull final String suffix) {
+        return new File(root.getPath() + suffix);
+    }
+
+    public synchronized void finish() throws IOException {
+        final File staging = sibling(STAGING);
+        final File retired = sibling(RETIRED);
+        awaitCleanup(retired.toPath());
+        // left behind by a compile that was interrupted
+        if (staging.exists()) FileUtils.deleteDirectory(staging);
+        if (retired.exists()) FileUtils.deleteDirectory(retired);
+
+        final Path old = root.toPath();
+        final boolean previous = root.isDirectory();
+        try (final IoExecutor io = new IoExecutor(ioLimit)) {
+            Files.createDirectories(staging.toPath());
+            linking = previous;
+            final List<Future<Boolean>> staged = new ArrayList<>(entries.size());
+            for (final ZipWriter.Source entry : entries.values()) staged.add(io.call(() -> stage(entry, staging.toPath(), old, previous)));
+            for (final Future<Boolean> kept : staged) {
+                if (io.await(kept)) unchanged++;
+                else changed++;
+            }
+            if (previous) removed = countRemoved(old);
+        } catch (final IOException e) {
+            FileUtils.deleteDirectory(staging);
+            throw e;
+        }
+        swap(staging.toPath(), retired.toPath(), previous);
+    }
+
+    // puts the given entry into the staging folder and tells whether it could be taken over from the old output
+    private boolean stage(@NotNull final ZipWriter.Source entry, @NotNull final Path staging, @NotNull final Path old, final boolean previous) throws IOException {
+        final Path file = staging.resolve(entry.name());
+        Files.createDirectories(file.getParent());
+
+        final Path oldFile = old.resolve(entry.name());
+        if (previous && sameContent(entry, oldFile) && !linkedToSource(entry, oldFile)) {
+            if (linking && link(oldFile, file)) return true;
+            // the file system does not support hard links, so just write it like any other file
+            linking = false;
+        }
+        if (entry.content() != null) Files.write(file, entry.content());
+        else copier.copy(Objects.requireNonNull(entry.file()).toPath(), file);
+        return false;
+    }
+
+    private void swap(@NotNull final Path staging, @NotNull final Path retired, final boolean previous) throws IOException {
+        final Path target = root.toPath();
+        if (previous) Files.move(target, retired, StandardCopyOption.ATOMIC_MOVE);
+        try {
+            Files.move(staging, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (final IOException e) {
+            if (previous) Files.move(retired, target, StandardCopyOption.ATOMIC_MOVE);
+            FileUtils.deleteDirectory(staging.toFile());
+            throw e;
+        }
+        if (!previous) return;
+        final Thread thread = new Thread(() -> {
+            try {
+                FileUtils.deleteDirectory(retired.toFile());
+            } catch (final IOException ignored) {
+                // deleted by the next sync at the latest
+            } finally {
+                synchronized (cleanups) {
+                    cleanups.remove(retired, Thread.currentThread());
+                }
+            }
+        }, "RePack output cleanup");
+        synchronized (cleanups) {
+            cleanups.put(retired, thread);
+        }
+        thread.start();
+    }
+
+    private static void awaitCleanup(@NotNull final Path retired) throws IOException {
+        final Thread running;
+        synchronized (cleanups) {
+            running = cleanups.get(retired);
+        }
+        if (running != null) await(running);
+    }
+
+    // waits until the old trees of every output are deleted
+    static void awaitCleanups() throws IOException {
+        final List<Thread> running;
+        synchronized (cleanups) {
+            running = new ArrayList<>(cleanups.values());
+        }
+        for (final Thread thread : running) await(thread);
+    }
+
+    private static void await(@NotNull final Thread cleanup) throws IOException {
+        try {
+            cleanup.join();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while deleting the previous output", e);
+        }
+    }
+
+    private static boolean sameContent(@NotNull final ZipWriter.Source entry, @NotNull final Path oldFile) throws IOException {
+        if (!Files.isRegularFile(oldFile, LinkOption.NOFOLLOW_LINKS)) return false;
+        final byte[] content = entry.content();
+        if (content == null) return Files.mismatch(Objects.requireNonNull(entry.file()).toPath(), oldFile) == -1L;
+        return Files.size(oldFile) == content.length && Arrays.equals(Files.readAllBytes(oldFile), content);
+    }
+
+    // an old file that is a hard link to its source in the workspace is only taken over while hard links are wanted,
+    // so switching to another copy strategy really separates the output from the workspace
+    private boolean linkedToSource(@NotNull final ZipWriter.Source entry, @NotNull final Path oldFile) throws IOException {
+        return copier.strategy() != CopyStrategy.HARDLINK && entry.file() != null && Files.isSameFile(entry.file().toPath(), oldFile);
+    }
+
+    private static boolean link(@NotNull final Path existing, @NotNull final Path link) {
+        try {
+            Files.createLink(link, existing);
+            return true;
+        } catch (final IOException | UnsupportedOperationException e) {
+            return false;
+        }
+    }
+
+    private int countRemoved(@NotNull final Path old) throws IOException {
+        final Set<String> names = entries.keySet();
+        try (final Stream<Path> files = Files.walk(old)) {
+            return (int) files.filter(Files::isRegularFile)
+                    .filter(f -> !names.contains(old.relativize(f).toString().replace(File.separatorChar, '/')))
+                    .count();
+        }
+    }
+
+    // nothing was written yet, so the old output stays as it is
+    public synchronized void discard() {
+        entries.clear();
+    }
+
+    @NotNull
+    public String toString() {
+        return root.getAbsolutePath();
+    }
+
+}
@@ -0,0 +1,102 @@
+package org.crayne.repack.conversion.output;
+
+import org.crayne.repack.conversion.util.ZipWriter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// collects the entries of the pack and writes them into the zip file in one go when finished, so no output directory
+// is ever created. generated files are kept in memory, copied files are only read once while zipping.
+// a later write to the same path replaces the earlier one, just like overwriting a file would
+public class ZipPackOutput implements PackOutput {
+
+    @NotNull
+    private final File zip;
+
+    @NotNull
+    private final ZipWriter writer;
+
+    @NotNull
+    private final Map<String, ZipWriter.Source> entries;
+
+    @Nullable
+    private String sha1;
+
+    public ZipPackOutput(@NotNull final File zip, @NotNull final ZipWriter writer) {
+        this.zip = zip;
+        this.writer = writer;
+        this.entries = new LinkedHashMap<>();
+    }
+
+    @NotNull
+    public File zip() {
+        return zip;
+    }
+
+    // hex SHA-1 of the finished zip file, as required for server resource pack prompts
+    @Nullable
+    public String sha1() {
+        return sha1;
+    }
+
+    public synchronized boolean exists(@NotNull final String path) {
+        return entries.containsKey(PackOutput.normalize(path));
+    }
+
+    public synchronized void write(@NotNull final String path, @NotNull final byte[] content) {
+        final String name = PackOutput.normalize(path);
+        entries.put(name, ZipWriter.Source.of(name, content));
+    }
+
+    public synchronized void copy(@NotNull final File source, @NotNull final String path) {
+        final String name = PackOutput.normalize(path);
+        entries.put(name, ZipWriter.Source.of(name, source));
+    }
+
+    @NotNull
+    public String describe(@NotNull final String path) {
+        return zip.getAbsolutePath() + "!/" + PackOutput.normalize(path);
+    }
+
+    // written next to the target first, so a failure never leaves a half-written zip behind
+    public synchronized void finish() throws IOException {
+        final File temporary = new File(zip.getPath() + ".tmp");
+        final MessageDigest digest = sha1Digest();
+        try (final OutputStream out = new BufferedOutputStream(new DigestOutputStream(new FileOutputStream(temporary), digest))) {
+            writer.write(entries.values(), out);
+        } catch (final IOException e) {
+            Files.deleteIfExists(temporary.toPath());
+            throw e;
+        }
+        Files.move(temporary.toPath(), zip.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        sha1 = HexFormat.of().formatHex(digest.digest());
+    }
+
+    public synchronized void discard() {
+        entries.clear();
+    }
+
+    @NotNull
+    private static MessageDigest sha1Digest() throws IOException {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IOException("SHA-1 is not supported by this JVM", e);
+        }
+    }
+
+    @NotNull
+    public String toString() {
+        return zip.getAbsolutePath();
+    }
+
+}
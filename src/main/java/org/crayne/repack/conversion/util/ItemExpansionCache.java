@@ -0,0 +1,109 @@
+package org.crayne.repack.conversion.util;
+
+import org.crayne.repack.util.WildcardPattern;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// the same item keys (*_helmet, *_chestplate, ...) show up in a lot of match blocks, so their expansions are computed once
+// per cache. every compile uses a cache of its own on a fork of the vanilla registry, so neither the expansions nor the
+// modded items interned by one compile outlive it. results are immutable, which makes them safe to share between threads
+public class ItemExpansionCache {
+
+    @NotNull
+    private final ItemRegistry registry;
+
+    @NotNull
+    private final Map<String, ItemSet> expansions;
+
+    @NotNull
+    private final LongAdder hits;
+
+    @NotNull
+    private final LongAdder misses;
+
+    public ItemExpansionCache(@NotNull final ItemRegistry registry) {
+        this.registry = registry;
+        this.expansions = new ConcurrentHashMap<>();
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+    }
+
+    // a cache for a single compile
+    @NotNull
+    public static ItemExpansionCache forCompile() {
+        return new ItemExpansionCache(ItemRegistry.vanilla().fork());
+    }
+
+    @NotNull
+    public ItemRegistry registry() {
+        return registry;
+    }
+
+    // all items matching the given key. modded keys are never expanded and just return themselves
+    @NotNull
+    public ItemSet expand(@NotNull final String key) {
+        if (VanillaItem.moddedItem(key)) return ItemSet.of(registry, registry.intern(key));
+
+        final String normalized = normalize(key);
+        final ItemSet cached = expansions.get(normalized);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+        misses.increment();
+        return expansions.computeIfAbsent(normalized, this::compute);
+    }
+
+    @NotNull
+    private ItemSet compute(@NotNull final String pattern) {
+        // keys without '*' are exact names, even if they contain a '?'
+        if (pattern.indexOf('*') == -1) {
+            final int id = registry.id(pattern);
+            return id == -1 ? ItemSet.empty(registry) : ItemSet.of(registry, id);
+        }
+        return ItemSet.of(registry, registry.matching(WildcardPattern.compile(pattern)));
+    }
+
+    @NotNull
+    private static String normalize(@NotNull final String key) {
+        final String actual = (key.startsWith("minecraft:") ? key.substring("minecraft:".length()) : key).toLowerCase();
+        final StringBuilder normalized = new StringBuilder(actual.length());
+        for (int i = 0; i < actual.length(); i++) {
+            final char c = actual.charAt(i);
+            if (c == '*' && !normalized.isEmpty() && normalized.charAt(normalized.length() - 1) == '*') continue;
+            normalized.append(c);
+        }
+        return normalized.toString();
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public int size() {
+        return expansions.size();
+    }
+
+    public void clear() {
+        expansions.clear();
+        hits.reset();
+        misses.reset();
+    }
+
+    @NotNull
+    public String toString() {
+        return "ItemExpansionCache {" +
+                "size = " + size() +
+                ", hits = " + hits() +
+                ", misses = " + misses() +
+                '}';
+    }
+
+}
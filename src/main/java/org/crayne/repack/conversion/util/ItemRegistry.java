@@ -0,0 +1,286 @@
+package org.crayne.repack.conversion.util;
+
+import org.crayne.repack.util.WildcardPattern;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// every known item gets a dense id (its VanillaItem ordinal), looked up by name through a hash map,
+// and by wildcard keys through a prefix trie and a trie over the reversed names.
+// modded items are interned on first use and get the ids after the known ones
+public class ItemRegistry {
+
+    @NotNull
+    private static final AtomicInteger versions = new AtomicInteger();
+
+    // built on first use only, since building the tries takes a while and fingerprinting the vanilla items does not need them
+    private static class Vanilla {
+
+        @NotNull
+        private static final ItemRegistry REGISTRY = new ItemRegistry(Arrays.stream(VanillaItem.values()).map(Enum::name).toList());
+
+    }
+
+    private final int version;
+
+    @NotNull
+    private final String[] names;
+
+    @NotNull
+    private final Map<String, Integer> ids;
+
+    @NotNull
+    private final Trie prefixes;
+
+    @NotNull
+    private final Trie suffixes;
+
+    @NotNull
+    private final Map<String, Integer> moddedIds;
+
+    // both are replaced instead of modified when a modded item is interned, so readers never need to lock
+    @NotNull
+    private volatile String[] moddedNames;
+
+    @NotNull
+    private volatile BitSet leggings;
+
+    private ItemRegistry(@NotNull final List<String> names) {
+        this.version = versions.incrementAndGet();
+        this.names = names.toArray(new String[0]);
+        this.ids = new HashMap<>(names.size() * 2);
+        this.moddedIds = new ConcurrentHashMap<>();
+        this.moddedNames = new String[0];
+        this.leggings = new BitSet(names.size());
+
+        final TrieBuilder prefixBuilder = new TrieBuilder();
+        final TrieBuilder suffixBuilder = new TrieBuilder();
+        for (int id = 0; id < this.names.length; id++) {
+            final String name = this.names[id];
+            ids.put(name, id);
+            if (leggings(name)) leggings.set(id);
+            prefixBuilder.insert(name, id);
+            suffixBuilder.insert(new StringBuilder(name).reverse(), id);
+        }
+        this.prefixes = prefixBuilder.build();
+        this.suffixes = suffixBuilder.build();
+    }
+
+    // the known items, sharing every lookup table of the given registry, without any of its modded items
+    private ItemRegistry(@NotNull final ItemRegistry known) {
+        this.version = versions.incrementAndGet();
+        this.names = known.names;
+        this.ids = known.ids;
+        this.prefixes = known.prefixes;
+        this.suffixes = known.suffixes;
+        this.moddedIds = new ConcurrentHashMap<>();
+        this.moddedNames = new String[0];
+        this.leggings = (BitSet) known.leggings.clone();
+        this.leggings.clear(names.length, Math.max(names.length, this.leggings.length()));
+    }
+
+    @NotNull
+    public static ItemRegistry vanilla() {
+        return Vanilla.REGISTRY;
+    }
+
+    // a registry with the same known items, that interns modded items on its own. a compile works on one of these,
+    // so the modded items it saw are dropped with it instead of piling up in the registry shared by the whole jvm
+    @NotNull
+    public ItemRegistry fork() {
+        return new ItemRegistry(this);
+    }
+
+    // the fingerprint of the vanilla registry, without building it
+    @NotNull
+    public static String vanillaFingerprint() {
+        return fingerprint(Arrays.stream(VanillaItem.values()).map(Enum::name).toArray(String[]::new));
+    }
+
+    // unique per registry instance, so cached lookups of one registry are never served for another
+    public int version() {
+        return version;
+    }
+
+    // derived from the known item names only, so unlike version() it stays the same across runs
+    @NotNull
+    public String fingerprint() {
+        return fingerprint(names);
+    }
+
+    @NotNull
+    private static String fingerprint(@NotNull final String[] names) {
+        return Integer.toHexString(Arrays.hashCode(names));
+    }
+
+    // amount of known (non-modded) items; their ids are 0 until size() - 1
+    public int size() {
+        return names.length;
+    }
+
+    @NotNull
+    public String name(final int id) {
+        return id < names.length ? names[id] : moddedNames[id - names.length];
+    }
+
+    // the id of the given modded item, assigning the next free one if it was not seen before
+    public int intern(@NotNull final String moddedName) {
+        final Integer existing = moddedIds.get(moddedName);
+        return existing != null ? existing : internSynchronized(moddedName);
+    }
+
+    private synchronized int internSynchronized(@NotNull final String moddedName) {
+        final Integer existing = moddedIds.get(moddedName);
+        if (existing != null) return existing;
+
+        final int id = names.length + moddedNames.length;
+        final String[] modded = Arrays.copyOf(moddedNames, moddedNames.length + 1);
+        modded[modded.length - 1] = moddedName;
+        if (leggings(moddedName)) {
+            final BitSet updated = (BitSet) leggings.clone();
+            updated.set(id);
+            leggings = updated;
+        }
+        moddedNames = modded;
+        moddedIds.put(moddedName, id);
+        return id;
+    }
+
+    // every item (including interned modded items) that is worn on the legs, used to split armor layer 1 and 2.
+    // the returned set must not be modified
+    @NotNull
+    BitSet leggings() {
+        return leggings;
+    }
+
+    private static boolean leggings(@NotNull final String name) {
+        return name.toLowerCase().endsWith("_leggings");
+    }
+
+    // -1 if there is no item with exactly this name
+    public int id(@NotNull final String name) {
+        final Integer id = ids.get(name);
+        return id == null ? -1 : id;
+    }
+
+    // ids of all items matching the given pattern, in ascending order. for 'prefix*', '*suffix' and '*' this is the array of
+    // the trie itself, so it must not be modified and never leaves this package; everyone else gets an ItemSet or a list
+    @NotNull
+    int[] matching(@NotNull final WildcardPattern pattern) {
+        final String str = pattern.pattern();
+        if (pattern.literal()) {
+            final int id = id(str);
+            return id == -1 ? new int[0] : new int[] {id};
+        }
+        final int firstWildcard = firstWildcard(str);
+        final int lastWildcard = lastWildcard(str);
+        final String prefix = str.substring(0, firstWildcard);
+        final String suffix = str.substring(lastWildcard + 1);
+
+        final int[] byPrefix = prefixes.find(prefix);
+        final int[] bySuffix = suffixes.find(new StringBuilder(suffix).reverse());
+
+        // 'prefix*' and '*suffix' (and '*' itself) are answered by the tries alone
+        if (onlyStars(str, firstWildcard, lastWildcard)) {
+            if (suffix.isEmpty()) return byPrefix;
+            if (prefix.isEmpty()) return bySuffix;
+        }
+        final int[] candidates = byPrefix.length <= bySuffix.length ? byPrefix : bySuffix;
+        final int minimumLength = prefix.length() + suffix.length();
+
+        int found = 0;
+        final int[] result = new int[candidates.length];
+        for (final int id : candidates) {
+            final String name = names[id];
+            if (name.length() >= minimumLength && pattern.matches(name)) result[found++] = id;
+        }
+        return Arrays.copyOf(result, found);
+    }
+
+    private static int firstWildcard(@NotNull final String pattern) {
+        for (int i = 0; i < pattern.length(); i++) if (isWildcard(pattern.charAt(i))) return i;
+        return pattern.length();
+    }
+
+    private static int lastWildcard(@NotNull final String pattern) {
+        for (int i = pattern.length() - 1; i >= 0; i--) if (isWildcard(pattern.charAt(i))) return i;
+        return -1;
+    }
+
+    private static boolean onlyStars(@NotNull final String pattern, final int from, final int to) {
+        for (int i = from; i <= to; i++) if (pattern.charAt(i) != '*') return false;
+        return true;
+    }
+
+    private static boolean isWildcard(final char c) {
+        return c == '*' || c == '?';
+    }
+
+    private static class Trie {
+
+        @NotNull
+        private final char[] keys;
+
+        @NotNull
+        private final Trie[] children;
+
+        // every id below this node, ascending
+        @NotNull
+        private final int[] ids;
+
+        private Trie(@NotNull final char[] keys, @NotNull final Trie[] children, @NotNull final int[] ids) {
+            this.keys = keys;
+            this.children = children;
+            this.ids = ids;
+        }
+
+        @NotNull
+        private int[] find(@NotNull final CharSequence key) {
+            Trie node = this;
+            for (int i = 0; i < key.length() && node != null; i++) node = node.child(key.charAt(i));
+            return node == null ? new int[0] : node.ids;
+        }
+
+        @Nullable
+        private Trie child(final char key) {
+            final int index = Arrays.binarySearch(keys, key);
+            return index < 0 ? null : children[index];
+        }
+
+    }
+
+    private static class TrieBuilder {
+
+        @NotNull
+        private final TreeMap<Character, TrieBuilder> children = new TreeMap<>();
+
+        @NotNull
+        private final List<Integer> ids = new ArrayList<>();
+
+        private void insert(@NotNull final CharSequence key, final int id) {
+            TrieBuilder node = this;
+            node.ids.add(id);
+            for (int i = 0; i < key.length(); i++) {
+                node = node.children.computeIfAbsent(key.charAt(i), c -> new TrieBuilder());
+                node.ids.add(id);
+            }
+        }
+
+        @NotNull
+        private Trie build() {
+            final char[] keys = new char[children.size()];
+            final Trie[] built = new Trie[children.size()];
+            int i = 0;
+            for (final Map.Entry<Character, TrieBuilder> child : children.entrySet()) {
+                keys[i] = child.getKey();
+                built[i++] = child.getValue().build();
+            }
+            return new Trie(keys, built, ids.stream().mapToInt(Integer::intValue).toArray());
+        }
+
+    }
+
+}
@@ -0,0 +1,124 @@
+package org.crayne.repack.conversion.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+// an immutable set of item ids of one registry. known items are materialized in registry order,
+// followed by the modded items in alphabetical order
+public class ItemSet {
+
+    @NotNull
+    private final ItemRegistry registry;
+
+    @NotNull
+    private final BitSet ids;
+
+    private ItemSet(@NotNull final ItemRegistry registry, @NotNull final BitSet ids) {
+        this.registry = registry;
+        this.ids = ids;
+    }
+
+    @NotNull
+    public static ItemSet empty(@NotNull final ItemRegistry registry) {
+        return new ItemSet(registry, new BitSet());
+    }
+
+    @NotNull
+    public static ItemSet of(@NotNull final ItemRegistry registry, @NotNull final int... ids) {
+        final BitSet set = new BitSet(registry.size());
+        for (final int id : ids) set.set(id);
+        return new ItemSet(registry, set);
+    }
+
+    @NotNull
+    public ItemRegistry registry() {
+        return registry;
+    }
+
+    public boolean isEmpty() {
+        return ids.isEmpty();
+    }
+
+    public int size() {
+        return ids.cardinality();
+    }
+
+    public boolean contains(final int id) {
+        return ids.get(id);
+    }
+
+    @NotNull
+    public ItemSet union(@NotNull final ItemSet other) {
+        if (other.ids.isEmpty()) return this;
+        if (ids.isEmpty()) return other;
+        final BitSet result = (BitSet) ids.clone();
+        result.or(other.ids);
+        return new ItemSet(registry, result);
+    }
+
+    @NotNull
+    public ItemSet intersection(@NotNull final ItemSet other) {
+        final BitSet result = (BitSet) ids.clone();
+        result.and(other.ids);
+        return new ItemSet(registry, result);
+    }
+
+    @NotNull
+    public ItemSet leggings() {
+        return intersection(new ItemSet(registry, registry.leggings()));
+    }
+
+    @NotNull
+    public ItemSet withoutLeggings() {
+        final BitSet result = (BitSet) ids.clone();
+        result.andNot(registry.leggings());
+        return new ItemSet(registry, result);
+    }
+
+    @NotNull
+    public List<String> names() {
+        final List<String> result = new ArrayList<>(size());
+        final int known = registry.size();
+        int id = ids.nextSetBit(0);
+        for (; id != -1 && id < known; id = ids.nextSetBit(id + 1)) result.add(registry.name(id));
+        if (id == -1) return result;
+
+        final int moddedStart = result.size();
+        for (; id != -1; id = ids.nextSetBit(id + 1)) result.add(registry.name(id));
+        result.subList(moddedStart, result.size()).sort(null);
+        return result;
+    }
+
+    // the same names in the same order as names(), without collecting them into a list first
+    public void forEachName(@NotNull final Consumer<String> action) {
+        final int known = registry.size();
+        int id = ids.nextSetBit(0);
+        for (; id != -1 && id < known; id = ids.nextSetBit(id + 1)) action.accept(registry.name(id));
+        if (id == -1) return;
+
+        final List<String> modded = new ArrayList<>();
+        for (; id != -1; id = ids.nextSetBit(id + 1)) modded.add(registry.name(id));
+        modded.sort(null);
+        modded.forEach(action);
+    }
+
+    public boolean equals(@Nullable final Object obj) {
+        if (obj == this) return true;
+        if (obj == null || obj.getClass() != this.getClass()) return false;
+        final ItemSet that = (ItemSet) obj;
+        return registry == that.registry && ids.equals(that.ids);
+    }
+
+    public int hashCode() {
+        return ids.hashCode();
+    }
+
+    @NotNull
+    public String toString() {
+        return names().toString();
+    }
+
+}
@@ -0,0 +1,119 @@
+package org.crayne.repack.conversion.util;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// builds a properties file straight into a reusable utf-8 byte buffer, instead of concatenating strings and encoding the result.
+// writers are pooled, so generating thousands of files reuses a handful of buffers no matter which threads generate them
+public class PropertiesWriter {
+
+    private static final int INITIAL_CAPACITY = 1 << 10;
+
+    // a writer that grew past this is not put back into the pool, so one huge file does not pin its buffer forever
+    private static final int POOLED_CAPACITY = 1 << 16;
+
+    private static final int POOL_SIZE = 64;
+
+    @NotNull
+    private static final Queue<PropertiesWriter> POOL = new ConcurrentLinkedQueue<>();
+
+    @NotNull
+    private byte[] buffer;
+
+    private int size;
+
+    @NotNull
+    private final Set<String> seen;
+
+    public PropertiesWriter() {
+        this.buffer = new byte[INITIAL_CAPACITY];
+        this.seen = new HashSet<>();
+    }
+
+    // a reset writer from the pool; hand it back with release() once its content was used
+    @NotNull
+    public static PropertiesWriter obtain() {
+        final PropertiesWriter writer = POOL.poll();
+        return writer == null ? new PropertiesWriter() : writer;
+    }
+
+    public void release() {
+        reset();
+        if (buffer.length <= POOLED_CAPACITY && POOL.size() < POOL_SIZE) POOL.offer(this);
+    }
+
+    public void reset() {
+        size = 0;
+        seen.clear();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void ensureCapacity(final int additional) {
+        if (size + additional > buffer.length) buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + additional));
+    }
+
+    @NotNull
+    public PropertiesWriter append(final char c) {
+        if (c >= 0x80) return append(String.valueOf(c));
+        ensureCapacity(1);
+        buffer[size++] = (byte) c;
+        return this;
+    }
+
+    @NotNull
+    public PropertiesWriter append(final int i) {
+        if (i >= 0 && i < 10) return append((char) ('0' + i));
+        return append(Integer.toString(i));
+    }
+
+    @NotNull
+    public PropertiesWriter append(@NotNull final String s) {
+        final int length = s.length();
+        ensureCapacity(length);
+        for (int i = 0; i < length; i++) {
+            final char c = s.charAt(i);
+            if (c >= 0x80) {
+                // not plain ascii; let the jdk encode the rest
+                final byte[] encoded = s.substring(i).getBytes(StandardCharsets.UTF_8);
+                ensureCapacity(encoded.length);
+                System.arraycopy(encoded, 0, buffer, size, encoded.length);
+                size += encoded.length;
+                return this;
+            }
+            buffer[size++] = (byte) c;
+        }
+        return this;
+    }
+
+    // true the first time the given key is passed since the last reset, for writing lines only once
+    public boolean once(@NotNull final String key) {
+        return seen.add(key);
+    }
+
+    // the bytes written so far; only valid until the writer is changed, reset or released
+    @NotNull
+    public ByteBuffer bytes() {
+        return ByteBuffer.wrap(buffer, 0, size).asReadOnlyBuffer();
+    }
+
+    @NotNull
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, size);
+    }
+
+    @NotNull
+    public String toString() {
+        return new String(buffer, 0, size, StandardCharsets.UTF_8);
+    }
+
+}
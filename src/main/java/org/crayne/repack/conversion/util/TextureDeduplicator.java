@@ -0,0 +1,154 @@
+package org.crayne.repack.conversion.util;
+
+import org.crayne.repack.conversion.output.OutputNameAllocator;
+import org.crayne.repack.core.WorkspaceIndex;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
+
+// gives every distinct texture content one file name in the cit folder, so textures with identical bytes are only written once,
+// even if they come from different files. a texture whose size no other texture has cannot be a duplicate, so only textures sharing
+// their size with another one are read and hashed, in parallel, large ones through a memory mapping instead of a copy.
+// names are handed out in path order, so the same textures always get the same names
+public class TextureDeduplicator {
+
+    // smaller files are simply read, since mapping them costs more than it saves
+    private static final long MAP_THRESHOLD = 1 << 20;
+
+    private final int threads;
+
+    @NotNull
+    private final Map<Path, String> names;
+
+    private int unique, hashed;
+
+    public TextureDeduplicator(final int threads) {
+        if (threads < 1) throw new IllegalArgumentException("Thread count must be at least 1, got " + threads);
+        this.threads = threads;
+        this.names = new HashMap<>();
+    }
+
+    @NotNull
+    private static Path key(@NotNull final Path path) {
+        return path.toAbsolutePath().normalize();
+    }
+
+    // the file name (including '.png') the given texture ends up with
+    @NotNull
+    public Optional<String> name(@NotNull final Path texture) {
+        return Optional.ofNullable(names.get(key(texture)));
+    }
+
+    // amount of distinct texture contents
+    public int unique() {
+        return unique;
+    }
+
+    // amount of texture files that turned out to have the same content as another one
+    public int duplicates() {
+        return names.size() - unique;
+    }
+
+    // amount of texture files that had to be read, since another texture has the same size
+    public int hashed() {
+        return hashed;
+    }
+
+    // the sizes are taken from the given index, which already knows them from walking the workspace
+    public void deduplicate(@NotNull final Collection<Path> textures, @NotNull final WorkspaceIndex index) throws IOException {
+        final List<Path> sorted = textures.stream().map(TextureDeduplicator::key).distinct().sorted().toList();
+        final long[] sizes = new long[sorted.size()];
+        final Map<Long, Integer> sameSize = new HashMap<>();
+        for (int i = 0; i < sorted.size(); i++) {
+            final Path texture = sorted.get(i);
+            final Optional<WorkspaceIndex.Entry> entry = index.find(texture.toFile());
+            sizes[i] = entry.isPresent() ? entry.get().size() : Files.size(texture);
+            sameSize.merge(sizes[i], 1, Integer::sum);
+        }
+        final List<Path> candidates = new ArrayList<>();
+        for (int i = 0; i < sorted.size(); i++) {
+            if (sameSize.get(sizes[i]) > 1) candidates.add(sorted.get(i));
+        }
+        final Iterator<String> hashes = hashAll(candidates).iterator();
+        hashed = candidates.size();
+
+        // a texture of a unique size is told apart by its size alone
+        final Map<String, String> nameByContent = new HashMap<>();
+        final OutputNameAllocator allocator = new OutputNameAllocator();
+        for (int i = 0; i < sorted.size(); i++) {
+            final Path texture = sorted.get(i);
+            final String content = sizes[i] + (sameSize.get(sizes[i]) > 1 ? ":" + hashes.next() : "");
+            final String name = nameByContent.computeIfAbsent(content, c -> freeName(texture.getFileName().toString(), allocator));
+            names.put(texture, name);
+        }
+        unique = nameByContent.size();
+    }
+
+    // textures with the same file name but different content get a number appended, just like properties files
+    @NotNull
+    private static String freeName(@NotNull final String fileName, @NotNull final OutputNameAllocator allocator) {
+        final String base = fileName.toLowerCase(Locale.ROOT).endsWith(".png") ? fileName.substring(0, fileName.length() - ".png".length()) : fileName;
+        return allocator.allocate(base, ".png");
+    }
+
+    @NotNull
+    private List<String> hashAll(@NotNull final List<Path> textures) throws IOException {
+        if (threads == 1 || textures.size() <= 1) {
+            final List<String> hashes = new ArrayList<>(textures.size());
+            for (final Path texture : textures) hashes.add(hash(texture));
+            return hashes;
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, textures.size()));
+        try {
+            final List<Future<String>> futures = new ArrayList<>(textures.size());
+            for (final Path texture : textures) futures.add(executor.submit(() -> hash(texture)));
+
+            final List<String> hashes = new ArrayList<>(textures.size());
+            for (final Future<String> future : futures) hashes.add(future.get());
+            return hashes;
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof final IOException io) throw io;
+            throw new IOException(e.getCause());
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while hashing textures", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @NotNull
+    private static String hash(@NotNull final Path texture) throws IOException {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported by this JVM", e);
+        }
+        try (final FileChannel channel = FileChannel.open(texture, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size < MAP_THRESHOLD) {
+                final ByteBuffer buffer = ByteBuffer.allocate((int) size);
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer) == -1) break;
+                }
+                digest.update(buffer.flip());
+            } else {
+                for (long position = 0; position < size; position += Integer.MAX_VALUE) {
+                    digest.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(Integer.MAX_VALUE, size - position)));
+                }
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+}
@@ -1,6 +1,6 @@
 package org.crayne.repack.conversion.util;
 
-import org.crayne.repack.util.StringUtil;
+import org.crayne.repack.util.WildcardPattern;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.*;
@@ -1160,6 +1160,8 @@ public enum VanillaItem {
     debug_stick,
     frogspawn;
 
+    private static final VanillaItem[] values = values();
+
     public boolean armor() {
         return switch (this) {
             case turtle_helmet, golden_helmet, iron_helmet, diamond_helmet, chainmail_helmet, netherite_helmet, leather_helmet,
@@ -1175,11 +1177,8 @@ public enum VanillaItem {
     }
 
     public static Optional<VanillaItem> of(@NotNull final String name) {
-        try {
-            return Optional.of(VanillaItem.valueOf(name.toLowerCase()));
-        } catch (final Exception e) {
-            return Optional.empty();
-        }
+        final int id = ItemRegistry.vanilla().id(name.toLowerCase());
+        return id == -1 ? Optional.empty() : Optional.of(values[id]);
     }
 
     public static boolean moddedItem(@NotNull final String namespacedKey) {
@@ -1193,9 +1192,14 @@ public enum VanillaItem {
             final Optional<VanillaItem> singleMatch = of(actual);
             return singleMatch.map(Collections::singletonList).orElse(Collections.emptyList());
         }
-        return Arrays.stream(VanillaItem.values())
-                .filter(i -> StringUtil.matchPattern(actual.toLowerCase(), i.name().toLowerCase()))
-                .toList();
+        return allMatching(WildcardPattern.compile(actual.toLowerCase()));
+    }
+
+    public static List<VanillaItem> allMatching(@NotNull final WildcardPattern pattern) {
+        final int[] ids = ItemRegistry.vanilla().matching(pattern);
+        final List<VanillaItem> result = new ArrayList<>(ids.length);
+        for (final int id : ids) result.add(values[id]);
+        return result;
     }
 
 }
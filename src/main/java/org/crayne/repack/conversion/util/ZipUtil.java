@@ -3,45 +3,32 @@ package org.crayne.repack.conversion.util;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.*;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Objects;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
 public class ZipUtil {
 
     private ZipUtil() {}
 
     public static void zipDirectory(@NotNull final File srcFolder, @NotNull final File destZipFile) throws IOException {
-        try (final FileOutputStream fileWriter = new FileOutputStream(destZipFile);
-            final ZipOutputStream zip = new ZipOutputStream(fileWriter)) {
-            addDirectory(srcFolder, srcFolder, zip);
-        }
+        zipDirectory(srcFolder, destZipFile, new ZipWriter(6, Runtime.getRuntime().availableProcessors()));
     }
 
-    private static void addFile(@NotNull final File rootPath, @NotNull final File srcFile, @NotNull final ZipOutputStream zip) throws IOException {
-        if (srcFile.isDirectory()) {
-            addDirectory(rootPath, srcFile, zip);
-            return;
-        }
-        final byte[] buf = new byte[1024];
-        int len;
-
-        try (final FileInputStream in = new FileInputStream(srcFile)) {
-            final String name = srcFile.getPath().replaceFirst(rootPath.getPath(), "");
-            zip.putNextEntry(new ZipEntry(name));
-            while ((len = in.read(buf)) > 0) zip.write(buf, 0, len);
+    public static void zipDirectory(@NotNull final File srcFolder, @NotNull final File destZipFile, @NotNull final ZipWriter writer) throws IOException {
+        final List<ZipWriter.Source> sources = new ArrayList<>();
+        addDirectory(srcFolder, "", sources);
+        try (final OutputStream out = new BufferedOutputStream(new FileOutputStream(destZipFile))) {
+            writer.write(sources, out);
         }
     }
 
-    private static void addDirectory(@NotNull final File rootPath, @NotNull final File srcFolder, @NotNull final ZipOutputStream zip) {
+    private static void addDirectory(@NotNull final File srcFolder, @NotNull final String prefix, @NotNull final List<ZipWriter.Source> sources) {
         Arrays.stream(Objects.requireNonNull(srcFolder.listFiles()))
                 .forEachOrdered(f -> {
-                    try {
-                        addFile(rootPath, f, zip);
-                    } catch (final IOException e) {
-                        throw new RuntimeException(e);
-                    }
+                    if (f.isDirectory()) addDirectory(f, prefix + f.getName() + "/", sources);
+                    else sources.add(ZipWriter.Source.of(prefix + f.getName(), f));
                 });
     }
 
@@ -0,0 +1,329 @@
+package org.crayne.repack.conversion.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+// writes reproducible zip archives: entries are sorted by name and carry a fixed timestamp. entries are compressed in parallel
+// into buffers and then written out in order. already compressed formats (png, ogg) are stored as they are, everything else
+// is deflated with the configured level, unless that would not make it any smaller
+public class ZipWriter {
+
+    public record Source(@NotNull String name, @Nullable byte[] content, @Nullable File file) {
+
+        @NotNull
+        public static Source of(@NotNull final String name, @NotNull final byte[] content) {
+            return new Source(name, content, null);
+        }
+
+        @NotNull
+        public static Source of(@NotNull final String name, @NotNull final File file) {
+            return new Source(name, null, file);
+        }
+
+        @NotNull
+        public byte[] read() throws IOException {
+            if (content != null) return content;
+            return Files.readAllBytes(Objects.requireNonNull(file).toPath());
+        }
+
+    }
+
+    private record Compressed(@NotNull byte[] name, int method, long crc, @NotNull byte[] data, int dataLength, int size) {}
+
+    // the compressed entry of a previous write, with what it was compressed from
+    private record Retained(@Nullable byte[] content, @Nullable String file, @NotNull Compressed compressed) {
+
+        private boolean sameAs(@NotNull final Source source) {
+            if (source.content() != null) return Arrays.equals(content, source.content());
+            return file != null && file.equals(fileFingerprint(Objects.requireNonNull(source.file())));
+        }
+
+    }
+
+    @NotNull
+    private static final Set<String> STORED_EXTENSIONS = Set.of("png", "ogg");
+
+    private static final int STORED = 0, DEFLATED = 8;
+
+    // 1980-01-01 00:00:00, the earliest timestamp a zip entry can have
+    private static final int DOS_TIME = 0, DOS_DATE = (1 << 5) | 1;
+
+    private static final int UTF8_FLAG = 1 << 11;
+
+    private static final long ZIP64_LIMIT = 0xFFFFFFFFL;
+    private static final int ZIP64_ENTRY_LIMIT = 0xFFFF;
+
+    // how many compressed entries may wait in memory per thread before the writer catches up
+    private static final int WINDOW_PER_THREAD = 4;
+
+    private final int level;
+    private final int threads;
+
+    @Nullable
+    private final Map<String, Retained> retained;
+
+    @NotNull
+    private final AtomicInteger reused;
+
+    private volatile int written;
+
+    private ZipWriter(final int level, final int threads, @Nullable final Map<String, Retained> retained) {
+        if (level != Deflater.DEFAULT_COMPRESSION && (level < 0 || level > 9))
+            throw new IllegalArgumentException("Compression level must be between 0 and 9, got " + level);
+        if (threads < 1) throw new IllegalArgumentException("Thread count must be at least 1, got " + threads);
+        this.level = level;
+        this.threads = threads;
+        this.retained = retained;
+        this.reused = new AtomicInteger();
+    }
+
+    // level 0 stores every entry, otherwise 1 to 9 like java.util.zip.Deflater (or Deflater.DEFAULT_COMPRESSION)
+    public ZipWriter(final int level, final int threads) {
+        this(level, threads, null);
+    }
+
+    // a writer that keeps the deflated entries of every write in memory, so a later write of the same entries
+    // only has to compress what changed. files count as unchanged as long as their size and modification time stay the same.
+    // stored entries (textures, sounds) are read again on every write instead: keeping them would hold the whole pack
+    // in memory while saving nothing but the read
+    @NotNull
+    public static ZipWriter retaining(final int level, final int threads) {
+        return new ZipWriter(level, threads, new ConcurrentHashMap<>());
+    }
+
+    // amount of entries of the last write that were taken over from an earlier one, without compressing them again
+    public int reused() {
+        return reused.get();
+    }
+
+    // amount of entries of the last write
+    public int written() {
+        return written;
+    }
+
+    public int level() {
+        return level;
+    }
+
+    public int threads() {
+        return threads;
+    }
+
+    public static boolean alreadyCompressed(@NotNull final String name) {
+        final int dot = name.lastIndexOf('.');
+        return dot != -1 && STORED_EXTENSIONS.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    public void write(@NotNull final Collection<Source> sources, @NotNull final OutputStream out) throws IOException {
+        final List<Source> sorted = new ArrayList<>(sources);
+        sorted.sort(Comparator.comparing(Source::name));
+        for (int i = 1; i < sorted.size(); i++) {
+            if (sorted.get(i).name().equals(sorted.get(i - 1).name())) throw new IOException("Duplicate zip entry: " + sorted.get(i).name());
+        }
+        reused.set(0);
+        written = sorted.size();
+        if (retained != null) retained.keySet().retainAll(sorted.stream().map(Source::name).collect(Collectors.toSet()));
+        final Writer writer = new Writer(out);
+        if (threads == 1 || sorted.size() <= 1) {
+            for (final Source source : sorted) writer.entry(compress(source));
+            writer.finish();
+            return;
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, sorted.size()));
+        try {
+            final int window = threads * WINDOW_PER_THREAD;
+            final Deque<Future<Compressed>> pending = new ArrayDeque<>(window);
+            int submitted = 0;
+            for (int i = 0; i < sorted.size(); i++) {
+                while (submitted < sorted.size() && submitted < i + window) {
+                    final Source source = sorted.get(submitted++);
+                    pending.add(executor.submit(() -> compress(source)));
+                }
+                writer.entry(pending.removeFirst().get());
+            }
+            writer.finish();
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof final IOException io) throw io;
+            throw new IOException(e.getCause());
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compressing zip entries", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @NotNull
+    private static String fileFingerprint(@NotNull final File file) {
+        return file.getAbsolutePath() + " " + file.length() + " " + file.lastModified();
+    }
+
+    @NotNull
+    private Compressed compress(@NotNull final Source source) throws IOException {
+        if (retained == null) return compressNew(source);
+
+        final Retained previous = retained.get(source.name());
+        if (previous != null && previous.sameAs(source)) {
+            reused.incrementAndGet();
+            return previous.compressed();
+        }
+        final String file = source.file() == null ? null : fileFingerprint(source.file());
+        final Compressed compressed = compressNew(source);
+        if (compressed.method() == DEFLATED) retained.put(source.name(), new Retained(source.content(), file, compressed));
+        else retained.remove(source.name());
+        return compressed;
+    }
+
+    @NotNull
+    private Compressed compressNew(@NotNull final Source source) throws IOException {
+        final byte[] name = source.name().getBytes(StandardCharsets.UTF_8);
+        final byte[] content = source.read();
+        final CRC32 crc = new CRC32();
+        crc.update(content);
+
+        if (level == 0 || alreadyCompressed(source.name()) || content.length == 0)
+            return new Compressed(name, STORED, crc.getValue(), content, content.length, content.length);
+
+        final Deflater deflater = new Deflater(level, true);
+        try {
+            deflater.setInput(content);
+            deflater.finish();
+            final ByteArrayOutputStream deflated = new ByteArrayOutputStream(Math.max(64, content.length / 2));
+            final byte[] buffer = new byte[Math.min(65536, Math.max(512, content.length))];
+            while (!deflater.finished()) {
+                final int length = deflater.deflate(buffer);
+                deflated.write(buffer, 0, length);
+                if (deflated.size() >= content.length) break;
+            }
+            if (!deflater.finished() || deflated.size() >= content.length)
+                return new Compressed(name, STORED, crc.getValue(), content, content.length, content.length);
+
+            return new Compressed(name, DEFLATED, crc.getValue(), deflated.toByteArray(), deflated.size(), content.length);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    // the actual zip format; only the central directory and the end records ever need zip64, since a single entry
+    // lives in a byte array and can never be larger than 4 GiB
+    private static class Writer {
+
+        @NotNull
+        private final OutputStream out;
+
+        @NotNull
+        private final ByteArrayOutputStream centralDirectory;
+
+        private long offset;
+        private long entries;
+
+        private Writer(@NotNull final OutputStream out) {
+            this.out = out;
+            this.centralDirectory = new ByteArrayOutputStream();
+        }
+
+        @NotNull
+        private static ByteBuffer buffer(final int size) {
+            return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        private void entry(@NotNull final Compressed entry) throws IOException {
+            final ByteBuffer local = buffer(30 + entry.name().length);
+            local.putInt(0x04034b50)
+                    .putShort((short) 20)
+                    .putShort((short) UTF8_FLAG)
+                    .putShort((short) entry.method())
+                    .putShort((short) DOS_TIME)
+                    .putShort((short) DOS_DATE)
+                    .putInt((int) entry.crc())
+                    .putInt(entry.dataLength())
+                    .putInt(entry.size())
+                    .putShort((short) entry.name().length)
+                    .putShort((short) 0)
+                    .put(entry.name());
+
+            final boolean zip64 = offset >= ZIP64_LIMIT;
+            final ByteBuffer central = buffer(46 + entry.name().length + (zip64 ? 12 : 0));
+            central.putInt(0x02014b50)
+                    .putShort((short) (zip64 ? 45 : 20))
+                    .putShort((short) (zip64 ? 45 : 20))
+                    .putShort((short) UTF8_FLAG)
+                    .putShort((short) entry.method())
+                    .putShort((short) DOS_TIME)
+                    .putShort((short) DOS_DATE)
+                    .putInt((int) entry.crc())
+                    .putInt(entry.dataLength())
+                    .putInt(entry.size())
+                    .putShort((short) entry.name().length)
+                    .putShort((short) (zip64 ? 12 : 0))
+                    .putShort((short) 0)
+                    .putShort((short) 0)
+                    .putShort((short) 0)
+                    .putInt(0)
+                    .putInt((int) (zip64 ? ZIP64_LIMIT : offset))
+                    .put(entry.name());
+            if (zip64) central.putShort((short) 0x0001).putShort((short) 8).putLong(offset);
+
+            out.write(local.array());
+            out.write(entry.data(), 0, entry.dataLength());
+            centralDirectory.write(central.array());
+            offset += local.capacity() + entry.dataLength();
+            entries++;
+        }
+
+        private void finish() throws IOException {
+            final long centralOffset = offset;
+            final long centralSize = centralDirectory.size();
+            centralDirectory.writeTo(out);
+            offset += centralSize;
+
+            final boolean zip64 = entries >= ZIP64_ENTRY_LIMIT || centralOffset >= ZIP64_LIMIT || offset >= ZIP64_LIMIT;
+            if (zip64) {
+                final ByteBuffer end64 = buffer(56 + 20);
+                end64.putInt(0x06064b50)
+                        .putLong(44)
+                        .putShort((short) 45)
+                        .putShort((short) 45)
+                        .putInt(0)
+                        .putInt(0)
+                        .putLong(entries)
+                        .putLong(entries)
+                        .putLong(centralSize)
+                        .putLong(centralOffset);
+                end64.putInt(0x07064b50)
+                        .putInt(0)
+                        .putLong(offset)
+                        .putInt(1);
+                out.write(end64.array());
+            }
+            final ByteBuffer end = buffer(22);
+            end.putInt(0x06054b50)
+                    .putShort((short) 0)
+                    .putShort((short) 0)
+                    .putShort((short) (zip64 ? ZIP64_ENTRY_LIMIT : entries))
+                    .putShort((short) (zip64 ? ZIP64_ENTRY_LIMIT : entries))
+                    .putInt((int) (zip64 ? ZIP64_LIMIT : centralSize))
+                    .putInt((int) (zip64 ? ZIP64_LIMIT : centralOffset))
+                    .putShort((short) 0);
+            out.write(end.array());
+            out.flush();
+        }
+
+    }
+
+}
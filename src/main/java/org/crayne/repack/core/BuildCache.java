@@ -0,0 +1,314 @@
+package org.crayne.repack.core;
+
+import org.crayne.repack.conversion.util.ItemRegistry;
+import org.crayne.repack.parsing.ast.Node;
+import org.crayne.repack.parsing.ast.NodeType;
+import org.crayne.repack.parsing.lexer.Token;
+import org.crayne.repack.util.logging.Logger;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+// keeps the analyzed syntax tree of every pack file in the '.repack-cache' folder of the workspace, keyed by a hash of the file content,
+// the compiler and the item registry. unchanged files are loaded from there instead of being lexed, parsed and analyzed again.
+// an entry that cannot be read for any reason is deleted, and its file is simply parsed again.
+// a cache that is kept open across builds (like in watch mode) also remembers the trees in memory, so unchanged files are not even read from disk
+public class BuildCache {
+
+    private record Remembered(@NotNull String hash, @NotNull Node tree) {}
+
+    @NotNull
+    public static final String DIRECTORY = ".repack-cache";
+
+    private static final int MAGIC = 0x52504143;
+    private static final int FORMAT = 1;
+
+    private static final String EXTENSION = ".ast";
+
+    @NotNull
+    private static final NodeType[] NODE_TYPES = NodeType.values();
+
+    @NotNull
+    private final File directory;
+
+    @NotNull
+    private final Logger logger;
+
+    @NotNull
+    private final String key;
+
+    @NotNull
+    private final Set<String> used;
+
+    @NotNull
+    private final Map<File, Remembered> remembered;
+
+    @NotNull
+    private final AtomicInteger loaded;
+
+    private volatile boolean writable;
+
+    private BuildCache(@NotNull final File directory, @NotNull final Logger logger) {
+        this.directory = directory;
+        this.logger = logger;
+        this.key = compilerKey() + "; format " + FORMAT;
+        this.used = ConcurrentHashMap.newKeySet();
+        this.remembered = new ConcurrentHashMap<>();
+        this.loaded = new AtomicInteger();
+        this.writable = true;
+    }
+
+    @NotNull
+    public static Optional<BuildCache> of(@NotNull final File workspace, @NotNull final Logger logger) {
+        final File directory = new File(workspace, DIRECTORY);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            logger.warn("Could not create build cache folder '" + directory.getAbsolutePath() + "', compiling without cache.");
+            return Optional.empty();
+        }
+        return Optional.of(new BuildCache(directory, logger));
+    }
+
+    @NotNull
+    public File directory() {
+        return directory;
+    }
+
+    // called before every build that uses this cache
+    public void beginBuild() {
+        used.clear();
+        loaded.set(0);
+    }
+
+    // amount of pack files that were loaded from this cache since the build began
+    public int loaded() {
+        return loaded.get();
+    }
+
+    // identifies everything besides the workspace that the result of a build depends on: the compiler, its syntax tree and the item registry
+    @NotNull
+    public static String compilerKey() {
+        return "RePack " + compilerVersion()
+                + "; nodes " + Integer.toHexString(Arrays.hashCode(Arrays.stream(NODE_TYPES).map(Enum::name).toArray()))
+                + "; registry " + ItemRegistry.vanillaFingerprint();
+    }
+
+    // the version of the running RePack build, worked out once, since the classes of a running jvm do not change
+    @NotNull
+    private static String compilerVersion() {
+        return CompilerVersion.VERSION;
+    }
+
+    private static class CompilerVersion {
+
+        @NotNull
+        private static final String VERSION = of();
+
+        // a jar that was rebuilt without changing the version still gets a new key, and so does a classes folder (when running from
+        // an ide or 'mvn exec') once any class in it was compiled again. if the classes cannot be found, the key is unique to this jvm,
+        // so nothing cached by another run is ever trusted
+        @NotNull
+        private static String of() {
+            final String version = Objects.requireNonNullElse(BuildCache.class.getPackage().getImplementationVersion(), "dev");
+            final CodeSource source = BuildCache.class.getProtectionDomain().getCodeSource();
+            try {
+                if (source == null || source.getLocation() == null) throw new IOException("unknown code source");
+                final File location = new File(source.getLocation().toURI());
+                if (location.isFile()) return version + "+" + location.length() + "." + location.lastModified();
+                if (location.isDirectory()) return version + "+" + classes(location.toPath());
+                throw new IOException("code source '" + location + "' does not exist");
+            } catch (final IOException | URISyntaxException | IllegalArgumentException e) {
+                return version + "+unknown." + UUID.randomUUID();
+            }
+        }
+
+        // amount, total size and newest modification time of the class files below the given folder
+        @NotNull
+        private static String classes(@NotNull final Path directory) throws IOException {
+            final long[] count = new long[1], size = new long[1], newest = new long[1];
+            Files.walkFileTree(directory, new SimpleFileVisitor<>() {
+                @NotNull
+                public FileVisitResult visitFile(@NotNull final Path file, @NotNull final BasicFileAttributes attributes) {
+                    if (!file.getFileName().toString().endsWith(".class")) return FileVisitResult.CONTINUE;
+                    count[0]++;
+                    size[0] += attributes.size();
+                    newest[0] = Math.max(newest[0], attributes.lastModifiedTime().toMillis());
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+            return "classes." + count[0] + "." + size[0] + "." + newest[0];
+        }
+
+    }
+
+    // the cache key of a pack file with the given content
+    @NotNull
+    public String hash(@NotNull final String code) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported by this JVM", e);
+        }
+        digest.update(key.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(code.getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    @NotNull
+    private File entry(@NotNull final String hash) {
+        return new File(directory, hash + EXTENSION);
+    }
+
+    // the cached tree of the given file, with every token pointing to that file
+    @NotNull
+    public Optional<Node> load(@NotNull final String hash, @NotNull final File packFile) {
+        final File entry = entry(hash);
+        final Remembered inMemory = remembered.get(packFile);
+        if (inMemory != null && inMemory.hash().equals(hash)) {
+            used.add(entry.getName());
+            loaded.incrementAndGet();
+            return Optional.of(inMemory.tree());
+        }
+        if (!entry.isFile()) return Optional.empty();
+        used.add(entry.getName());
+        try {
+            final byte[] bytes = Files.readAllBytes(entry.toPath());
+            final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT) throw new IOException("not a build cache entry");
+            if (!in.readUTF().equals(key) || !in.readUTF().equals(hash)) throw new IOException("key mismatch");
+
+            final int bodyLength = in.readInt();
+            final int bodyStart = bytes.length - in.available();
+            if (bodyLength < 0 || bodyLength + 8 != in.available()) throw new IOException("truncated");
+            final CRC32 crc = new CRC32();
+            crc.update(bytes, bodyStart, bodyLength);
+            in.skipNBytes(bodyLength);
+            if (in.readLong() != crc.getValue()) throw new IOException("checksum mismatch");
+
+            final DataInputStream body = new DataInputStream(new ByteArrayInputStream(bytes, bodyStart, bodyLength));
+            final int stringCount = body.readInt();
+            if (stringCount < 0 || stringCount > body.available()) throw new IOException("invalid string count " + stringCount);
+            final String[] strings = new String[stringCount];
+            for (int i = 0; i < strings.length; i++) {
+                final byte[] string = new byte[body.readInt()];
+                body.readFully(string);
+                strings[i] = new String(string, StandardCharsets.UTF_8);
+            }
+            final Node tree = readNode(body, strings, packFile);
+            remembered.put(packFile, new Remembered(hash, tree));
+            loaded.incrementAndGet();
+            return Optional.of(tree);
+        } catch (final IOException | RuntimeException e) {
+            logger.warn("\t\tDiscarding corrupted build cache entry '" + entry.getName() + "' (" + e.getMessage() + ").");
+            invalidate(entry);
+            return Optional.empty();
+        }
+    }
+
+    @NotNull
+    private static Node readNode(@NotNull final DataInputStream in, @NotNull final String[] strings, @NotNull final File packFile) throws IOException {
+        final NodeType type = NODE_TYPES[in.readUnsignedShort()];
+        final int string = in.readInt();
+        final Node node;
+        if (string == -1) {
+            node = new Node(type);
+        } else {
+            final int line = in.readInt();
+            final int column = in.readInt();
+            node = new Node(type, new Token(strings[string], line, column, in.readBoolean() ? packFile : null));
+        }
+        final int children = in.readInt();
+        if (children < 0 || children > in.available()) throw new IOException("invalid child count " + children);
+        final List<Node> read = new ArrayList<>(children);
+        for (int i = 0; i < children; i++) read.add(readNode(in, strings, packFile));
+        node.addChildren(read);
+        return node;
+    }
+
+    public void store(@NotNull final String hash, @NotNull final File packFile, @NotNull final Node tree) {
+        remembered.put(packFile, new Remembered(hash, tree));
+        final File entry = entry(hash);
+        used.add(entry.getName());
+        if (!writable || entry.isFile()) return;
+
+        final Map<String, Integer> strings = new LinkedHashMap<>();
+        final ByteArrayOutputStream nodes = new ByteArrayOutputStream();
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        File temporary = null;
+        try {
+            writeNode(new DataOutputStream(nodes), tree, strings);
+            final DataOutputStream bodyOut = new DataOutputStream(body);
+            bodyOut.writeInt(strings.size());
+            for (final String string : strings.keySet()) {
+                final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                bodyOut.writeInt(bytes.length);
+                bodyOut.write(bytes);
+            }
+            nodes.writeTo(bodyOut);
+
+            final CRC32 crc = new CRC32();
+            crc.update(body.toByteArray());
+            temporary = File.createTempFile(hash, ".tmp", directory);
+            try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT);
+                out.writeUTF(key);
+                out.writeUTF(hash);
+                out.writeInt(body.size());
+                body.writeTo(out);
+                out.writeLong(crc.getValue());
+            }
+            Files.move(temporary.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (final IOException e) {
+            writable = false;
+            logger.warn("\t\tCould not write build cache entry '" + entry.getAbsolutePath() + "': " + e.getMessage() + "; not caching anything else.");
+            if (temporary != null) invalidate(temporary);
+        }
+    }
+
+    private static void writeNode(@NotNull final DataOutputStream out, @NotNull final Node node, @NotNull final Map<String, Integer> strings) throws IOException {
+        out.writeShort(node.type().ordinal());
+        final Token value = node.value();
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(strings.computeIfAbsent(value.token(), s -> strings.size()));
+            out.writeInt(value.line());
+            out.writeInt(value.column());
+            out.writeBoolean(value.file() != null);
+        }
+        out.writeInt(node.children().size());
+        for (final Node child : node.children()) writeNode(out, child, strings);
+    }
+
+    // deletes every entry that was neither loaded nor stored since the build began, so edited and deleted files do not pile up
+    public void prune() {
+        remembered.values().removeIf(r -> !used.contains(r.hash() + EXTENSION));
+        final File[] entries = directory.listFiles();
+        if (entries == null) return;
+        for (final File entry : entries) {
+            if (!used.contains(entry.getName())) invalidate(entry);
+        }
+    }
+
+    private void invalidate(@NotNull final File entry) {
+        try {
+            Files.deleteIfExists(entry.toPath());
+        } catch (final IOException e) {
+            logger.warn("\t\tCould not delete build cache entry '" + entry.getAbsolutePath() + "': " + e.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,44 @@
+package org.crayne.repack.core;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// every file a build depended on: the ones it read, and the ones it looked for without finding them,
+// since creating one of those could change the result just as well
+public class BuildInputs {
+
+    @NotNull
+    private final Set<File> read;
+
+    @NotNull
+    private final Set<File> missing;
+
+    public BuildInputs() {
+        this.read = ConcurrentHashMap.newKeySet();
+        this.missing = ConcurrentHashMap.newKeySet();
+    }
+
+    public void read(@NotNull final File file) {
+        read.add(file.getAbsoluteFile());
+    }
+
+    public void missing(@NotNull final File file) {
+        missing.add(file.getAbsoluteFile());
+    }
+
+    @NotNull
+    public Set<File> read() {
+        return Collections.unmodifiableSet(read);
+    }
+
+    // files that were looked for but not found
+    @NotNull
+    public Set<File> missing() {
+        return Collections.unmodifiableSet(missing);
+    }
+
+}
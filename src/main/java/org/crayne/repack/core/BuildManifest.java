@@ -0,0 +1,314 @@
+package org.crayne.repack.core;
+
+import org.crayne.repack.conversion.output.OutputMode;
+import org.crayne.repack.conversion.output.SyncPackOutput;
+import org.crayne.repack.util.logging.Logger;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+// remembers what a compile was built from and what it wrote, in a manifest beside the output. as long as none of those inputs changed,
+// no pack file was added and the output is still the one that was written, compiling again would produce the same pack, so it is skipped.
+// inputs are compared by size and modification time, and only hashed again if just their modification time changed.
+// every folder of the workspace is recorded as well: adding, removing or renaming a file changes the modification time of its folder,
+// so as long as no folder changed, the workspace does not have to be walked to find new pack files or files that were missing before
+public class BuildManifest {
+
+    private record Fingerprint(long size, long modified) {
+
+        @NotNull
+        private static Fingerprint of(@NotNull final BasicFileAttributes attributes) {
+            return new Fingerprint(attributes.size(), attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS));
+        }
+
+    }
+
+    private record Entry(@NotNull String path, @NotNull Fingerprint fingerprint) {}
+
+    private record Input(@NotNull String path, @NotNull Fingerprint fingerprint, @NotNull String hash) {}
+
+    private record Contents(@NotNull List<Entry> directories, @NotNull List<Input> inputs, @NotNull List<String> missing, @NotNull List<Entry> outputs) {}
+
+    private record Walk(@NotNull List<Entry> directories, @NotNull Set<String> packFiles) {}
+
+    @NotNull
+    public static final String EXTENSION = ".repack-manifest";
+
+    private static final String HEADER = "repack-manifest 1";
+
+    // the manifest is written in place, so one that was cut off while writing must be recognizable
+    private static final String END = "end";
+
+    // recorded instead of the hash of an input that changed while the build was running, so it never counts as unchanged
+    private static final String UNSETTLED = "unsettled";
+
+    @NotNull
+    private final String workspace;
+
+    @NotNull
+    private final String output;
+
+    @NotNull
+    private final String cache;
+
+    @NotNull
+    private final Path file;
+
+    @NotNull
+    private final List<String> header;
+
+    @NotNull
+    private final Logger logger;
+
+    public BuildManifest(@NotNull final File workspace, @NotNull final File out, @NotNull final CompileOptions options, @NotNull final Logger logger) {
+        this.workspace = workspace.toPath().toAbsolutePath().normalize().toString();
+        this.output = Path.of(out.getPath() + (options.output() == OutputMode.ZIP ? ".zip" : "")).toAbsolutePath().normalize().toString();
+        this.cache = Path.of(this.workspace, BuildCache.DIRECTORY).toString();
+        this.file = Path.of(out.getPath() + EXTENSION).toAbsolutePath().normalize();
+        this.header = List.of(
+                HEADER,
+                "key " + BuildCache.compilerKey(),
+                "options " + options.output() + " " + options.compressionLevel() + " " + options.copy(),
+                "workspace " + this.workspace
+        );
+        this.logger = logger;
+    }
+
+    private static boolean inside(@NotNull final String path, @NotNull final String root) {
+        return path.startsWith(root) && (path.length() == root.length() || path.charAt(root.length()) == File.separatorChar);
+    }
+
+    // the cache folder and a folder output (including the folders it is synced through) are never part of the workspace
+    private boolean walked(@NotNull final String path) {
+        return inside(path, workspace) && !inside(path, cache) && !inside(path, output)
+                && !inside(path, output + SyncPackOutput.STAGING) && !inside(path, output + SyncPackOutput.RETIRED);
+    }
+
+    // whether compiling the workspace again would produce exactly the output that is already there
+    public boolean upToDate() {
+        final Optional<Contents> read = read();
+        if (read.isEmpty()) return false;
+        final Contents contents = read.get();
+        try {
+            for (final Entry output : contents.outputs()) {
+                if (!fingerprint(output.path()).map(output.fingerprint()::equals).orElse(false)) return false;
+            }
+            final Set<String> directories = new HashSet<>();
+            boolean changedDirectory = false;
+            for (final Entry directory : contents.directories()) {
+                directories.add(directory.path());
+                if (fingerprint(directory.path()).map(directory.fingerprint()::equals).orElse(false)) continue;
+                if (!walked(directory.path())) return false;
+                changedDirectory = true;
+            }
+            // something was added, removed or renamed, so look for new pack files and for files that are no longer missing
+            final Walk walk = changedDirectory ? walk() : null;
+            if (walk != null) {
+                final Set<String> packFiles = new HashSet<>(walk.packFiles());
+                for (final Input input : contents.inputs()) {
+                    if (input.path().endsWith(".rep") && walked(input.path()) && !packFiles.remove(input.path())) return false;
+                }
+                if (!packFiles.isEmpty()) return false;
+            }
+            for (final String missing : contents.missing()) {
+                final String parent = new File(missing).getParent();
+                if (walk == null && parent != null && directories.contains(parent)) continue;
+                if (Files.exists(Path.of(missing))) return false;
+            }
+
+            final List<Input> settled = new ArrayList<>(contents.inputs().size());
+            boolean touched = false;
+            for (final Input input : contents.inputs()) {
+                final Optional<Fingerprint> fingerprint = fingerprint(input.path());
+                if (fingerprint.isEmpty() || input.hash().equals(UNSETTLED)) return false;
+                if (fingerprint.get().equals(input.fingerprint())) {
+                    settled.add(input);
+                    continue;
+                }
+                // touched, but maybe not changed (e.g. after a checkout)
+                if (fingerprint.get().size() != input.fingerprint().size() || !hash(input.path()).equals(input.hash())) return false;
+                settled.add(new Input(input.path(), fingerprint.get(), input.hash()));
+                touched = true;
+            }
+            // remember what was just compared, so the next check does not have to do it again
+            if (walk != null || touched) {
+                final List<Entry> recorded = walk == null ? contents.directories() : new ArrayList<>(walk.directories());
+                if (walk != null) contents.directories().stream().filter(d -> !walked(d.path())).forEach(recorded::add);
+                save(new Contents(recorded, settled, contents.missing(), contents.outputs()));
+            }
+            return true;
+        } catch (final IOException e) {
+            return false;
+        }
+    }
+
+    // records the inputs of a build that started at the given time and just finished successfully
+    public void write(@NotNull final BuildInputs inputs, final long startedMillis) {
+        final Map<String, Input> previous = new HashMap<>();
+        read().ifPresent(c -> c.inputs().forEach(i -> previous.put(i.path(), i)));
+        final long startedNanos = TimeUnit.MILLISECONDS.toNanos(startedMillis);
+        try {
+            // created before the folders are recorded, since creating it changes the folder it is in
+            if (!Files.exists(file)) Files.createFile(file);
+
+            final Map<String, Input> read = new TreeMap<>();
+            for (final File input : inputs.read()) {
+                final String path = input.toPath().normalize().toString();
+                final Optional<Fingerprint> fingerprint = fingerprint(path);
+                if (fingerprint.isEmpty()) throw new IOException("input '" + path + "' disappeared during the build");
+
+                final Input old = previous.get(path);
+                final String hash;
+                if (fingerprint.get().modified() >= startedNanos) hash = UNSETTLED;
+                else if (old != null && old.fingerprint().equals(fingerprint.get()) && !old.hash().equals(UNSETTLED)) hash = old.hash();
+                else hash = hash(path);
+                read.put(path, new Input(path, fingerprint.get(), hash));
+            }
+            final Set<String> missing = new TreeSet<>();
+            for (final File input : inputs.missing()) {
+                final String path = input.toPath().normalize().toString();
+                if (!read.containsKey(path)) missing.add(path);
+            }
+            final List<Entry> directories = new ArrayList<>(walk().directories());
+            final List<Entry> outputs = new ArrayList<>();
+            walkOutput(directories, outputs);
+            save(new Contents(directories, new ArrayList<>(read.values()), new ArrayList<>(missing), outputs));
+        } catch (final IOException e) {
+            logger.warn("Could not write build manifest '" + file + "': " + e.getMessage() + "; the next compile will not be skipped.");
+            invalidate();
+        }
+    }
+
+    // forgets the last build, e.g. after one failed
+    public void invalidate() {
+        try {
+            Files.deleteIfExists(file);
+        } catch (final IOException e) {
+            logger.warn("Could not delete build manifest '" + file + "': " + e.getMessage());
+        }
+    }
+
+    // every folder and every pack file of the workspace
+    @NotNull
+    private Walk walk() throws IOException {
+        final Walk walk = new Walk(new ArrayList<>(), new HashSet<>());
+        if (!Files.isDirectory(Path.of(workspace))) return walk;
+        Files.walkFileTree(Path.of(workspace), new SimpleFileVisitor<>() {
+            @NotNull
+            public FileVisitResult preVisitDirectory(@NotNull final Path directory, @NotNull final BasicFileAttributes attributes) {
+                final String path = directory.toString();
+                if (!walked(path)) return FileVisitResult.SKIP_SUBTREE;
+                walk.directories().add(new Entry(path, Fingerprint.of(attributes)));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @NotNull
+            public FileVisitResult visitFile(@NotNull final Path path, @NotNull final BasicFileAttributes attributes) {
+                if (attributes.isRegularFile() && path.getFileName().toString().endsWith(".rep")) walk.packFiles().add(path.toString());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return walk;
+    }
+
+    // the zip, or every file and folder of the output folder
+    private void walkOutput(@NotNull final List<Entry> directories, @NotNull final List<Entry> outputs) throws IOException {
+        final Path root = Path.of(output);
+        if (!Files.isDirectory(root)) {
+            fingerprint(output).ifPresent(f -> outputs.add(new Entry(output, f)));
+            return;
+        }
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @NotNull
+            public FileVisitResult preVisitDirectory(@NotNull final Path directory, @NotNull final BasicFileAttributes attributes) {
+                directories.add(new Entry(directory.toString(), Fingerprint.of(attributes)));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @NotNull
+            public FileVisitResult visitFile(@NotNull final Path path, @NotNull final BasicFileAttributes attributes) {
+                outputs.add(new Entry(path.toString(), Fingerprint.of(attributes)));
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    @NotNull
+    private static Optional<Fingerprint> fingerprint(@NotNull final String path) {
+        try {
+            return Optional.of(Fingerprint.of(Files.readAttributes(Path.of(path), BasicFileAttributes.class)));
+        } catch (final IOException e) {
+            return Optional.empty();
+        }
+    }
+
+    @NotNull
+    private static String hash(@NotNull final String path) throws IOException {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported by this JVM", e);
+        }
+        try (final InputStream in = Files.newInputStream(Path.of(path))) {
+            final byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) digest.update(buffer, 0, read);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    // anything unexpected, including a manifest of another compiler, another workspace or other options, means there is no previous build to compare with
+    @NotNull
+    private Optional<Contents> read() {
+        if (!Files.isRegularFile(file)) return Optional.empty();
+        try {
+            final List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+            if (lines.size() <= header.size() || !lines.subList(0, header.size()).equals(header) || !lines.get(lines.size() - 1).equals(END))
+                return Optional.empty();
+
+            final Contents contents = new Contents(new ArrayList<>(), new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+            for (final String line : lines.subList(header.size(), lines.size() - 1)) {
+                final int space = line.indexOf(' ');
+                final String kind = line.substring(0, space);
+                final String[] values = line.substring(space + 1).split(" ", switch (kind) {
+                    case "input" -> 4;
+                    case "directory", "output" -> 3;
+                    default -> 1;
+                });
+                switch (kind) {
+                    case "directory" -> contents.directories().add(new Entry(values[2], new Fingerprint(Long.parseLong(values[0]), Long.parseLong(values[1]))));
+                    case "input" -> contents.inputs().add(new Input(values[3], new Fingerprint(Long.parseLong(values[0]), Long.parseLong(values[1])), values[2]));
+                    case "missing" -> contents.missing().add(values[0]);
+                    case "output" -> contents.outputs().add(new Entry(values[2], new Fingerprint(Long.parseLong(values[0]), Long.parseLong(values[1]))));
+                    default -> throw new IOException("unknown entry '" + kind + "'");
+                }
+            }
+            return Optional.of(contents);
+        } catch (final IOException | RuntimeException e) {
+            return Optional.empty();
+        }
+    }
+
+    private void save(@NotNull final Contents contents) throws IOException {
+        final List<String> lines = new ArrayList<>(header);
+        contents.directories().forEach(d -> lines.add("directory " + d.fingerprint().size() + " " + d.fingerprint().modified() + " " + d.path()));
+        contents.inputs().forEach(i -> lines.add("input " + i.fingerprint().size() + " " + i.fingerprint().modified() + " " + i.hash() + " " + i.path()));
+        contents.missing().forEach(m -> lines.add("missing " + m));
+        contents.outputs().forEach(o -> lines.add("output " + o.fingerprint().size() + " " + o.fingerprint().modified() + " " + o.path()));
+        lines.add(END);
+
+        // written in place instead of being moved there, which would change the folder it is in
+        Files.write(file, lines, StandardCharsets.UTF_8);
+    }
+
+}
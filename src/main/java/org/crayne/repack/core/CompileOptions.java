@@ -0,0 +1,143 @@
+package org.crayne.repack.core;
+
+import org.crayne.repack.conversion.output.CopyStrategy;
+import org.crayne.repack.conversion.output.OutputMode;
+import org.jetbrains.annotations.NotNull;
+
+public class CompileOptions {
+
+    private int threads;
+
+    private int compressionLevel;
+
+    private int ioLimit;
+
+    private boolean cache;
+
+    private boolean force;
+
+    @NotNull
+    private CompileProfiler profiler;
+
+    @NotNull
+    private OutputMode output;
+
+    @NotNull
+    private CopyStrategy copy;
+
+    public CompileOptions() {
+        this.threads = Runtime.getRuntime().availableProcessors();
+        this.compressionLevel = 6;
+        this.ioLimit = 32;
+        this.cache = true;
+        this.profiler = CompileProfiler.disabled();
+        this.output = OutputMode.ZIP;
+        this.copy = CopyStrategy.COPY;
+    }
+
+    public int threads() {
+        return threads;
+    }
+
+    @NotNull
+    public CompileOptions threads(final int threads) {
+        if (threads < 1) throw new IllegalArgumentException("Thread count must be at least 1, got " + threads);
+        this.threads = threads;
+        return this;
+    }
+
+    // deflate level of text entries in a zipped pack; 0 stores every entry uncompressed
+    public int compressionLevel() {
+        return compressionLevel;
+    }
+
+    @NotNull
+    public CompileOptions compressionLevel(final int compressionLevel) {
+        if (compressionLevel < 0 || compressionLevel > 9) throw new IllegalArgumentException("Compression level must be between 0 and 9, got " + compressionLevel);
+        this.compressionLevel = compressionLevel;
+        return this;
+    }
+
+    // how many file operations may run at once while compiling; 1 runs all of them on the compiling thread
+    public int ioLimit() {
+        return ioLimit;
+    }
+
+    @NotNull
+    public CompileOptions ioLimit(final int ioLimit) {
+        if (ioLimit < 1) throw new IllegalArgumentException("I/O limit must be at least 1, got " + ioLimit);
+        this.ioLimit = ioLimit;
+        return this;
+    }
+
+    // whether analyzed pack files are kept in (and loaded from) the build cache of the workspace
+    public boolean cache() {
+        return cache;
+    }
+
+    @NotNull
+    public CompileOptions cache(final boolean cache) {
+        this.cache = cache;
+        return this;
+    }
+
+    // whether to compile even if the build manifest says the output is up to date
+    public boolean force() {
+        return force;
+    }
+
+    @NotNull
+    public CompileOptions force(final boolean force) {
+        this.force = force;
+        return this;
+    }
+
+    @NotNull
+    public CompileProfiler profiler() {
+        return profiler;
+    }
+
+    @NotNull
+    public CompileOptions profiler(@NotNull final CompileProfiler profiler) {
+        this.profiler = profiler;
+        return this;
+    }
+
+    @NotNull
+    public OutputMode output() {
+        return output;
+    }
+
+    @NotNull
+    public CompileOptions output(@NotNull final OutputMode output) {
+        this.output = output;
+        return this;
+    }
+
+    // how textures and copied files end up in a directory output
+    @NotNull
+    public CopyStrategy copy() {
+        return copy;
+    }
+
+    @NotNull
+    public CompileOptions copy(@NotNull final CopyStrategy copy) {
+        this.copy = copy;
+        return this;
+    }
+
+    @NotNull
+    public String toString() {
+        return "CompileOptions {" +
+                "threads = " + threads +
+                ", compressionLevel = " + compressionLevel +
+                ", ioLimit = " + ioLimit +
+                ", cache = " + cache +
+                ", force = " + force +
+                ", profiling = " + profiler.enabled() +
+                ", output = " + output +
+                ", copy = " + copy +
+                '}';
+    }
+
+}
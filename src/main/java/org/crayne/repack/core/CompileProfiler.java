@@ -0,0 +1,239 @@
+package org.crayne.repack.core;
+
+import org.apache.commons.text.StringEscapeUtils;
+import org.crayne.repack.util.logging.Logger;
+import org.crayne.repack.util.logging.LoggingLevel;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// collects wall time, cpu time and allocated bytes per compile phase, per-file parse times and a few counters.
+// measurements are taken on the thread doing the work and summed up, so phases running on several threads at once
+// (like parsing) report their total time over all threads. a disabled profiler measures nothing
+public class CompileProfiler {
+
+    public enum Phase {
+        WALK("walk"),
+        READ("read"),
+        LEX("lex"),
+        PARSE("parse"),
+        ANALYZE("analyze"),
+        LOAD("semantic load"),
+        CIT("cit generation"),
+        TEXTURE_DEDUPE("texture dedupe"),
+        TEXTURE_COPY("texture copy"),
+        ZIP("zip");
+
+        @NotNull
+        private final String displayName;
+
+        Phase(@NotNull final String displayName) {
+            this.displayName = displayName;
+        }
+
+        @NotNull
+        public String displayName() {
+            return displayName;
+        }
+    }
+
+    public enum Counter {
+        RULES("rules"),
+        CACHED_FILES("cached files"),
+        EXPANDED_ITEMS("expanded items"),
+        EXPANSION_CACHE_HITS("expansion hits"),
+        EXPANSION_CACHE_MISSES("expansion misses"),
+        DEDUPLICATED_TEXTURES("deduplicated textures"),
+        FILES_WRITTEN("files written"),
+        BYTES_WRITTEN("bytes written"),
+        BYTES_COPIED("bytes copied"),
+        BYTES_TRANSFERRED("bytes transferred"),
+        BYTES_REFLINKED("bytes reflinked"),
+        BYTES_HARD_LINKED("bytes hard linked");
+
+        @NotNull
+        private final String displayName;
+
+        Counter(@NotNull final String displayName) {
+            this.displayName = displayName;
+        }
+
+        @NotNull
+        public String displayName() {
+            return displayName;
+        }
+    }
+
+    public interface Measurement extends AutoCloseable {
+
+        void close();
+
+    }
+
+    private static final int SHOWN_FILES = 10;
+
+    private static final int WALL = 0, CPU = 1, ALLOCATED = 2, MEASUREMENTS = 3;
+
+    @NotNull
+    private static final CompileProfiler DISABLED = new CompileProfiler(false);
+
+    @NotNull
+    private static final Measurement NOTHING = () -> {};
+
+    @NotNull
+    private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    private final boolean enabled;
+
+    @NotNull
+    private final LongAdder[][] phases;
+
+    @NotNull
+    private final LongAdder[] counters;
+
+    @NotNull
+    private final Map<File, Long> fileNanos;
+
+    private CompileProfiler(final boolean enabled) {
+        this.enabled = enabled;
+        this.phases = new LongAdder[Phase.values().length][MEASUREMENTS + 1];
+        for (final LongAdder[] phase : phases) for (int i = 0; i < phase.length; i++) phase[i] = new LongAdder();
+        this.counters = new LongAdder[Counter.values().length];
+        for (int i = 0; i < counters.length; i++) counters[i] = new LongAdder();
+        this.fileNanos = new ConcurrentHashMap<>();
+    }
+
+    public CompileProfiler() {
+        this(true);
+    }
+
+    @NotNull
+    public static CompileProfiler disabled() {
+        return DISABLED;
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    // use with try-with-resources; everything until the measurement is closed counts towards the given phase
+    @NotNull
+    public Measurement measure(@NotNull final Phase phase) {
+        if (!enabled) return NOTHING;
+
+        final long startWall = System.nanoTime();
+        final long startCpu = cpuTime();
+        final long startAllocated = allocatedBytes();
+        return () -> {
+            final LongAdder[] totals = phases[phase.ordinal()];
+            totals[WALL].add(System.nanoTime() - startWall);
+            totals[CPU].add(cpuTime() - startCpu);
+            totals[ALLOCATED].add(allocatedBytes() - startAllocated);
+            totals[MEASUREMENTS].increment();
+        };
+    }
+
+    public void file(@NotNull final File file, final long nanos) {
+        if (enabled) fileNanos.merge(file, nanos, Long::sum);
+    }
+
+    public void count(@NotNull final Counter counter, final long amount) {
+        if (enabled) counters[counter.ordinal()].add(amount);
+    }
+
+    public long wallNanos(@NotNull final Phase phase) {
+        return phases[phase.ordinal()][WALL].sum();
+    }
+
+    public long cpuNanos(@NotNull final Phase phase) {
+        return phases[phase.ordinal()][CPU].sum();
+    }
+
+    public long allocatedBytes(@NotNull final Phase phase) {
+        return phases[phase.ordinal()][ALLOCATED].sum();
+    }
+
+    public long measurements(@NotNull final Phase phase) {
+        return phases[phase.ordinal()][MEASUREMENTS].sum();
+    }
+
+    public long count(@NotNull final Counter counter) {
+        return counters[counter.ordinal()].sum();
+    }
+
+    // every profiled file with its parse time, slowest first
+    @NotNull
+    public List<Map.Entry<File, Long>> files() {
+        final List<Map.Entry<File, Long>> result = new ArrayList<>(fileNanos.entrySet());
+        result.sort(Map.Entry.<File, Long>comparingByValue().reversed().thenComparing(e -> e.getKey().getPath()));
+        return result;
+    }
+
+    private static long cpuTime() {
+        return threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : 0;
+    }
+
+    private static long allocatedBytes() {
+        return threads instanceof final com.sun.management.ThreadMXBean sunThreads && sunThreads.isThreadAllocatedMemorySupported()
+                ? sunThreads.getThreadAllocatedBytes(Thread.currentThread().getId())
+                : 0;
+    }
+
+    @NotNull
+    private static String millis(final long nanos) {
+        return String.format(Locale.ROOT, "%.2f", nanos / 1_000_000.0);
+    }
+
+    public void printTable(@NotNull final Logger logger) {
+        final StringBuilder table = new StringBuilder("\nCompile profile:\n");
+        table.append(String.format(Locale.ROOT, "    %-16s %12s %12s %16s %10s%n", "phase", "wall ms", "cpu ms", "allocated bytes", "count"));
+        for (final Phase phase : Phase.values()) {
+            table.append(String.format(Locale.ROOT, "    %-16s %12s %12s %16d %10d%n", phase.displayName(),
+                    millis(wallNanos(phase)), millis(cpuNanos(phase)), allocatedBytes(phase), measurements(phase)));
+        }
+        table.append('\n');
+        for (final Counter counter : Counter.values()) {
+            table.append(String.format(Locale.ROOT, "    %-16s %12d%n", counter.displayName(), count(counter)));
+        }
+        final List<Map.Entry<File, Long>> files = files();
+        table.append("\n    slowest files (").append(Math.min(SHOWN_FILES, files.size())).append(" of ").append(files.size()).append("):\n");
+        files.stream().limit(SHOWN_FILES).forEach(f -> table.append(String.format(Locale.ROOT, "    %12s ms  %s%n", millis(f.getValue()), f.getKey().getPath())));
+        logger.log(table.toString(), LoggingLevel.INFO);
+    }
+
+    @NotNull
+    public String toJson() {
+        final StringBuilder json = new StringBuilder("{\n  \"phases\": {\n");
+        final Phase[] allPhases = Phase.values();
+        for (int i = 0; i < allPhases.length; i++) {
+            final Phase phase = allPhases[i];
+            json.append("    \"").append(phase.displayName()).append("\": {")
+                    .append("\"wallNanos\": ").append(wallNanos(phase))
+                    .append(", \"cpuNanos\": ").append(cpuNanos(phase))
+                    .append(", \"allocatedBytes\": ").append(allocatedBytes(phase))
+                    .append(", \"count\": ").append(measurements(phase))
+                    .append(i == allPhases.length - 1 ? "}\n" : "},\n");
+        }
+        json.append("  },\n  \"counters\": {\n");
+        final Counter[] allCounters = Counter.values();
+        for (int i = 0; i < allCounters.length; i++) {
+            json.append("    \"").append(allCounters[i].displayName()).append("\": ").append(count(allCounters[i]))
+                    .append(i == allCounters.length - 1 ? "\n" : ",\n");
+        }
+        json.append("  },\n  \"files\": [\n");
+        final List<Map.Entry<File, Long>> files = files();
+        for (int i = 0; i < files.size(); i++) {
+            final Map.Entry<File, Long> file = files.get(i);
+            json.append("    {\"path\": \"").append(StringEscapeUtils.escapeJson(file.getKey().getPath()))
+                    .append("\", \"nanos\": ").append(file.getValue())
+                    .append(i == files.size() - 1 ? "}\n" : "},\n");
+        }
+        return json.append("  ]\n}\n").toString();
+    }
+
+}
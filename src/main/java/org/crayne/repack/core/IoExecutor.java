@@ -0,0 +1,119 @@
+package org.crayne.repack.core;
+
+import org.crayne.repack.util.logging.Logger;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+// runs the file operations of a compile (writing properties, copying textures, ...) concurrently, since they mostly wait for the disk.
+// on java 21 and later every operation gets its own virtual thread, before that a pool of platform threads is used. either way, at most
+// 'limit' operations run at once, so a huge pack does not run out of file descriptors. with a limit of 1, everything runs on the calling thread
+public class IoExecutor implements AutoCloseable {
+
+    private final int limit;
+
+    @NotNull
+    private final Semaphore permits;
+
+    private final ExecutorService executor;
+
+    private final boolean virtual;
+
+    public IoExecutor(final int limit) {
+        if (limit < 1) throw new IllegalArgumentException("I/O limit must be at least 1, got " + limit);
+        this.limit = limit;
+        this.permits = new Semaphore(limit);
+        final ExecutorService virtualThreads = limit == 1 ? null : virtualThreadPerTask();
+        this.virtual = virtualThreads != null;
+        this.executor = limit == 1 ? null : virtual ? virtualThreads : Executors.newFixedThreadPool(limit, r -> {
+            final Thread thread = new Thread(r, "RePack I/O");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // the jdk this is built against does not have virtual threads yet, so they are only used if the running jvm has them
+    private static ExecutorService virtualThreadPerTask() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (final ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    public int limit() {
+        return limit;
+    }
+
+    // whether operations run on virtual threads
+    public boolean virtual() {
+        return virtual;
+    }
+
+    @NotNull
+    public <T> Future<T> call(@NotNull final Callable<T> operation) {
+        final Callable<T> limited = () -> {
+            permits.acquire();
+            try {
+                return operation.call();
+            } finally {
+                permits.release();
+            }
+        };
+        if (executor != null) return executor.submit(limited);
+        try {
+            return CompletableFuture.completedFuture(limited.call());
+        } catch (final Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    // runs the given operation with a logger of its own, which writes into a buffer that can be replayed once the operation is done,
+    // so the log looks the same as if everything had run one after another. operations are expected to log their own errors
+    @NotNull
+    public Future<ByteArrayOutputStream> submit(@NotNull final Logger logger, @NotNull final Consumer<Logger> operation) {
+        return call(() -> {
+            final ByteArrayOutputStream log = new ByteArrayOutputStream();
+            operation.accept(logger.buffered(log));
+            return log;
+        });
+    }
+
+    // waits for the given operation and replays its log output
+    public void replay(@NotNull final Logger logger, @NotNull final Future<ByteArrayOutputStream> operation) {
+        try {
+            logger.replay(await(operation));
+        } catch (final IOException e) {
+            throw new IllegalStateException("File operation failed unexpectedly", e);
+        }
+    }
+
+    // waits for the given operation and rethrows whatever it threw
+    public <T> T await(@NotNull final Future<T> operation) throws IOException {
+        try {
+            return operation.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a file operation", e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof final IOException io) throw io;
+            if (e.getCause() instanceof final RuntimeException runtime) throw runtime;
+            throw new IOException(e.getCause());
+        }
+    }
+
+    // stops whatever is still running and waits for it, so nothing writes anymore once this returns
+    public void close() {
+        if (executor == null) return;
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
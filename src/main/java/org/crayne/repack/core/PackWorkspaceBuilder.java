@@ -5,6 +5,8 @@ import org.crayne.repack.conversion.PackWorkspace;
 import org.crayne.repack.core.single.PackFile;
 import org.crayne.repack.core.single.PackVariable;
 import org.crayne.repack.core.single.PredicateType;
+import org.crayne.repack.core.single.VariableScope;
+import org.crayne.repack.core.single.VariableTemplate;
 import org.crayne.repack.core.single.predicate.*;
 import org.crayne.repack.util.logging.Logger;
 import org.crayne.repack.util.logging.LoggingLevel;
@@ -16,33 +18,50 @@ import org.crayne.repack.parsing.parser.TreeAnalyzer;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
-import java.nio.file.Path;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 public class PackWorkspaceBuilder {
 
     private final Logger logger;
     private final Parser parser;
+    private final CompileOptions options;
     private PackWorkspace workspace;
+    private BuildCache cache;
     private boolean encounteredError;
 
+    // every string that had its variables filled in, split up once, since the same literal tends to appear over and over
+    private final Map<String, VariableTemplate> templates;
+
     public PackWorkspaceBuilder() {
-        this.logger = new Logger();
-        this.parser = new Parser(logger);
-        this.encounteredError = false;
+        this(new Logger());
     }
 
     public PackWorkspaceBuilder(@NotNull final Logger logger) {
+        this(logger, new CompileOptions());
+    }
+
+    public PackWorkspaceBuilder(@NotNull final Logger logger, @NotNull final CompileOptions options) {
         this.logger = logger;
         this.parser = new Parser(this.logger);
+        this.options = options;
         this.encounteredError = false;
+        this.templates = new HashMap<>();
+    }
+
+    // uses the given cache (which may already remember trees from earlier builds) instead of opening the one of the workspace
+    public PackWorkspaceBuilder(@NotNull final Logger logger, @NotNull final CompileOptions options, @NotNull final BuildCache cache) {
+        this(logger, options);
+        this.cache = cache;
     }
 
     private void workspaceError(@NotNull final String message) {
@@ -50,24 +69,34 @@ public class PackWorkspaceBuilder {
         encounteredError = true;
     }
 
+    @SuppressWarnings("try")
     @NotNull
     public Optional<PackWorkspace> setup(@NotNull final File directory) {
         try {
             logger.info("Setting up workspace...");
             logger.info("Parsing files...");
-            workspace = new PackWorkspace(logger);
-            final Set<Pair<File, Node>> trees = parseAllOfDirectory(directory);
+            workspace = new PackWorkspace(logger, options);
+            if (cache == null && options.cache()) cache = BuildCache.of(directory, logger).orElse(null);
+            if (cache != null) cache.beginBuild();
+            final List<Pair<File, Node>> trees = parseAllOfDirectory(directory);
             if (encounteredError) {
                 workspaceError("Could not open workspace due to previous error; aborting.");
                 return Optional.empty();
             }
+            if (cache != null) cache.prune();
             if (trees.isEmpty()) {
                 logger.info("Nothing was parsed; no operation was performed.");
                 return Optional.empty();
             }
             logger.log("Successfully parsed all pack files of workspace.", LoggingLevel.SUCCESS);
             logger.info("Loading workspace, reading parsed files...");
-            readPackFiles(trees, directory);
+            try (final CompileProfiler.Measurement ignored = options.profiler().measure(CompileProfiler.Phase.LOAD)) {
+                readPackFiles(trees, directory);
+            }
+            options.profiler().count(CompileProfiler.Counter.RULES, workspace.packFiles()
+                    .stream()
+                    .mapToLong(p -> p.matches().stream().filter(m -> m instanceof PackMatchPredicate).count())
+                    .sum());
 
             if (encounteredError) {
                 workspaceError("Could not read parsed files due to previous error.");
@@ -88,8 +117,17 @@ public class PackWorkspaceBuilder {
         return readPackFileNode(tree, preprocessed, root);
     }
 
+    private boolean textureExists(@NotNull final File texture) {
+        if (workspace.index().isFile(texture)) {
+            workspace.inputs().read(texture);
+            return true;
+        }
+        workspace.inputs().missing(texture);
+        return false;
+    }
+
     private boolean checkTextureExists(@NotNull final File root, @NotNull final String child, @NotNull final Token at) {
-        if (!new File(root, child).isFile() && !new File(root, child + ".png").isFile()) {
+        if (!textureExists(new File(root, child)) && !textureExists(new File(root, child + ".png"))) {
             logger.traceback("Could not find texture file '" + child + "' in '" + root.getAbsolutePath() + "'.", at, LoggingLevel.ANALYZING_ERROR, "Did you spell the filename correctly?");
             encounteredError = true;
             return true;
@@ -107,8 +145,8 @@ public class PackWorkspaceBuilder {
             return null;
         }
 
-        final String finalFrom = replaceVariables(from.noStringLiterals(), from, workspace.globalVariables(), addTo.variables());
-        final String finalTo = replaceVariables(to.noStringLiterals(), to, workspace.globalVariables(), addTo.variables());
+        final String finalFrom = replaceVariables(from.noStringLiterals(), from, addTo.scope());
+        final String finalTo = replaceVariables(to.noStringLiterals(), to, addTo.scope());
         return new PackCopyFromToPredicate(finalFrom, finalTo);
     }
 
@@ -141,7 +179,7 @@ public class PackWorkspaceBuilder {
             case MATCH_STATEMENT -> PredicateType.MATCH;
             default -> null;
         };
-        final String finalValue = replaceVariables(value.noStringLiterals(), value, workspace.globalVariables(), addTo.variables());
+        final String finalValue = replaceVariables(value.noStringLiterals(), value, addTo.scope());
         if (type != PredicateType.MATCH && checkTextureExists(root, finalValue, value)) return null;
 
         final PackSimplePredicate predicate = new PackSimplePredicate(ident, finalValue, type);
@@ -173,7 +211,7 @@ public class PackWorkspaceBuilder {
             workspaceError("An unexpected error occurred, invalid value type for setall-value statement");
             return;
         }
-        final String finalValue = replaceVariables(value.noStringLiterals(), value, workspace.globalVariables(), addTo.variables());
+        final String finalValue = replaceVariables(value.noStringLiterals(), value, addTo.scope());
         if (checkTextureExists(root, finalValue, value)) return;
 
         final PackPredicate predicate = new PackSupredicate(predicateType, finalValue);
@@ -217,7 +255,7 @@ public class PackWorkspaceBuilder {
                         .map(Objects::requireNonNull)
                         .collect(Collectors.toSet());
 
-        final String finalValue = replaceVariables(value.noStringLiterals(), value, workspace.globalVariables(), addTo.variables());
+        final String finalValue = replaceVariables(value.noStringLiterals(), value, addTo.scope());
         if (checkTextureExists(root, finalValue, value)) return;
 
         final PackPredicate predicate = new PackMapAllPredicate(type, keys, finalValue);
@@ -226,30 +264,17 @@ public class PackWorkspaceBuilder {
         else matchPredicate.predicates().add(predicate);
     }
 
-    @SafeVarargs
     @NotNull
-    private String replaceVariables(@NotNull final String originalString, @NotNull final Token at, @NotNull final Collection<PackVariable>... variables) {
-        String temp = originalString;
-
-        final Matcher variableMatcher = Pattern.compile(("\\$\\((.*?)\\)")).matcher(originalString);
-        while (variableMatcher.find()) {
-            final String variableName = variableMatcher.group(1);
-            final Optional<PackVariable> variable = Arrays.stream(variables)
-                    .map(s -> s.stream().filter(p -> p.name().equals(variableName)).findAny())
-                    .filter(Optional::isPresent)
-                    .findFirst()
-                    .orElse(Optional.empty());
-
-            if (variable.isEmpty()) {
-                logger.traceback("Variable '" + variableName + "' was not found. Did you spell the name correctly?", at, LoggingLevel.ANALYZING_ERROR,
-                        "Variables are used like so: '$(variablename)'.");
-                encounteredError = true;
-                temp = "";
-                break;
-            }
-            temp = temp.replace("$(" + variableName + ")", variable.get().value());
-        }
-        return temp;
+    private String replaceVariables(@NotNull final String originalString, @NotNull final Token at, @NotNull final VariableScope scope) {
+        final VariableTemplate template = templates.computeIfAbsent(originalString, VariableTemplate::compile);
+        final Optional<String> result = template.evaluate(scope);
+        if (result.isPresent()) return result.get();
+
+        final String variableName = template.undefined(scope).orElseThrow();
+        logger.traceback("Variable '" + variableName + "' was not found. Did you spell the name correctly?", at, LoggingLevel.ANALYZING_ERROR,
+                "Variables are used like so: '$(variablename)'.");
+        encounteredError = true;
+        return "";
     }
 
     private void variableRedefinedError(@NotNull final String name, @NotNull final Token at) {
@@ -268,7 +293,7 @@ public class PackWorkspaceBuilder {
             workspaceError("An unexpected error occurred, invalid variable definition node");
             return;
         }
-        final String finalValue = replaceVariables(value.noStringLiterals(), value, workspace.globalVariables(), addTo.variables());
+        final String finalValue = replaceVariables(value.noStringLiterals(), value, addTo.scope());
         final PackVariable variable = new PackVariable(ident.token(), finalValue);
         final String name = variable.name();
 
@@ -310,7 +335,7 @@ public class PackWorkspaceBuilder {
         final Optional<Integer> customWeight;
         try {
             customWeight = customWeightToken
-                    .map(t -> replaceVariables(t.noStringLiterals(), t, workspace.globalVariables(), addTo.variables()))
+                    .map(t -> replaceVariables(t.noStringLiterals(), t, addTo.scope()))
                     .map(Integer::parseInt);
         } catch (final NumberFormatException e) {
             customWeightToken.ifPresent(t -> logger.traceback("Could not parse custom weight '" + t.noStringLiterals() + "', not a valid integer.", t, LoggingLevel.ANALYZING_ERROR));
@@ -375,7 +400,7 @@ public class PackWorkspaceBuilder {
                 .filter(Optional::isPresent)
                 .map(Optional::get).toList();
 
-        final String json = replaceVariables(jsonToken.noStringLiterals(), jsonToken, workspace.globalVariables(), addTo.variables());
+        final String json = replaceVariables(jsonToken.noStringLiterals(), jsonToken, addTo.scope());
         final PackItemModelPredicate itemModelPredicate = new PackItemModelPredicate(keys, json);
         matchPredicate.predicates().add(itemModelPredicate);
     }
@@ -399,7 +424,7 @@ public class PackWorkspaceBuilder {
 
     @NotNull
     private PackFile readPackFileNode(@NotNull final Pair<File, Node> tree, @Nullable final PackFile alreadyExisting, @NotNull final File root) {
-        final PackFile addTo = alreadyExisting == null ? new PackFile(tree.getLeft(), root) : alreadyExisting;
+        final PackFile addTo = alreadyExisting == null ? new PackFile(tree.getLeft(), root, workspace.globals()) : alreadyExisting;
         tree.getRight().children().forEach(statement -> {
             switch (statement.type()) {
                 case MATCH_STATEMENT -> readMatchStatement(statement, addTo, root);
@@ -412,7 +437,7 @@ public class PackWorkspaceBuilder {
 
     @NotNull
     private PackFile preprocessPackFile(@NotNull final Pair<File, Node> tree, @Nullable final PackFile alreadyExisting, @NotNull final File root) {
-        final PackFile addTo = alreadyExisting == null ? new PackFile(tree.getLeft(), root) : alreadyExisting;
+        final PackFile addTo = alreadyExisting == null ? new PackFile(tree.getLeft(), root, workspace.globals()) : alreadyExisting;
         tree.getRight().children().forEach(statement -> {
             switch (statement.type()) {
                 case LET_STATEMENT, GLOBAL_STATEMENT -> definePackVariable(statement, addTo);
@@ -422,55 +447,154 @@ public class PackWorkspaceBuilder {
     }
 
     private void readPackFiles(@NotNull final Collection<Pair<File, Node>> trees, @NotNull final File root) {
-        trees.stream().map(t -> readPackFileNode(t, root)).forEach(workspace.packFiles()::add);
+        trees.stream().map(t -> readPackFileNode(t, root)).forEach(workspace::addPackFile);
     }
 
     @NotNull
-    private Set<Pair<File, Node>> parseAllOfDirectory(@NotNull final File directory) {
+    private List<Pair<File, Node>> parseAllOfDirectory(@NotNull final File directory) {
         logger.info("Parsing all files of directory '" + directory.getAbsolutePath() + "'...");
 
         if (!directory.isDirectory()) throw new IllegalArgumentException("Could not find directory: " + directory);
-        try (final Stream<Path> paths = Files.walk(directory.toPath())) {
-            final List<File> files = paths.map(Path::toFile)
-                    .filter(File::isFile)
-                    .filter(f -> f.getName().endsWith(".rep")).toList();
+        try {
+            final List<File> files = packFilesOf(directory);
 
-            final List<Pair<File, Optional<Node>>> optionalNodes = files.stream().map(f -> Pair.of(f, parse(f))).toList();
-            if (optionalNodes.stream().anyMatch(p -> p.getRight().isEmpty())) throw new Exception("See previous error");
+            final int threads = Math.min(options.threads(), files.size());
+            final List<Pair<File, Optional<Node>>> optionalNodes = threads > 1 ? parseAllParallel(files, threads) : parseAll(files);
 
-            return optionalNodes.stream().filter(p -> p.getRight().isPresent()).map(p -> Pair.of(p.getLeft(), p.getRight().get())).collect(Collectors.toSet());
+            if (optionalNodes.stream().anyMatch(p -> p.getRight().isEmpty())) {
+                encounteredError = true;
+                throw new Exception("See previous error");
+            }
+            return optionalNodes.stream().map(p -> Pair.of(p.getLeft(), p.getRight().orElseThrow())).toList();
         } catch (final Exception e) {
             workspaceError("Could not read pack workspace '" + directory.getAbsolutePath() + "': " + e.getMessage());
-            if (!e.getMessage().equals("See previous error")) e.printStackTrace(logger);
+            if (!"See previous error".equals(e.getMessage())) e.printStackTrace(logger);
         }
-        return Collections.emptySet();
+        return Collections.emptyList();
     }
 
+    @SuppressWarnings("try")
     @NotNull
-    private Optional<Node> parse(@NotNull final File packFile) {
-        if (encounteredError) return Optional.empty();
+    private List<File> packFilesOf(@NotNull final File directory) throws IOException {
+        try (final CompileProfiler.Measurement ignored = options.profiler().measure(CompileProfiler.Phase.WALK)) {
+            return workspace.index().walk(directory).stream()
+                    .map(WorkspaceIndex.Entry::file)
+                    .filter(f -> f.getName().endsWith(".rep"))
+                    .sorted(Comparator.comparing(File::getPath))
+                    .toList();
+        }
+    }
+
+    @NotNull
+    private List<Pair<File, Optional<Node>>> parseAll(@NotNull final List<File> files) {
+        final List<Pair<File, Optional<Node>>> result = new ArrayList<>(files.size());
+        for (final File file : files) {
+            final Optional<Node> tree = parse(file, parser, logger);
+            result.add(Pair.of(file, tree));
+            if (tree.isEmpty()) break;
+        }
+        return result;
+    }
+
+    // every worker thread gets its own parser (and with it its own tokenizer), since both keep per-file state.
+    // the log output of every file is buffered and replayed in file order, so the result and the log look exactly like a sequential parse
+    @NotNull
+    private List<Pair<File, Optional<Node>>> parseAllParallel(@NotNull final List<File> files, final int threads) throws InterruptedException {
+        logger.info("\tParsing " + files.size() + " pack files using " + threads + " threads...");
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final AtomicBoolean failed = new AtomicBoolean(false);
+        final ThreadLocal<ByteArrayOutputStream> workerBuffer = ThreadLocal.withInitial(ByteArrayOutputStream::new);
+        final ThreadLocal<Logger> workerLogger = ThreadLocal.withInitial(() -> logger.buffered(workerBuffer.get()));
+        final ThreadLocal<Parser> workerParser = ThreadLocal.withInitial(() -> new Parser(workerLogger.get()));
+
+        try {
+            final List<Future<Pair<Optional<Node>, ByteArrayOutputStream>>> futures = files.stream()
+                    .map(f -> executor.submit(() -> {
+                        if (failed.get()) return null;
+
+                        final ByteArrayOutputStream buffer = workerBuffer.get();
+                        buffer.reset();
+                        final Optional<Node> tree = parse(f, workerParser.get(), workerLogger.get());
+                        if (tree.isEmpty()) failed.set(true);
+
+                        final ByteArrayOutputStream log = new ByteArrayOutputStream(buffer.size());
+                        buffer.writeTo(log);
+                        return Pair.of(tree, log);
+                    }))
+                    .toList();
+
+            final List<Pair<File, Optional<Node>>> result = new ArrayList<>(files.size());
+            for (int i = 0; i < files.size(); i++) {
+                final Pair<Optional<Node>, ByteArrayOutputStream> parsed = futures.get(i).get();
+                final Optional<Node> tree;
+                if (parsed == null) {
+                    // skipped because a later file already failed; this one still comes first, so parse it here
+                    tree = parse(files.get(i), parser, logger);
+                } else {
+                    logger.replay(parsed.getRight());
+                    tree = parsed.getLeft();
+                }
+                result.add(Pair.of(files.get(i), tree));
+
+                if (tree.isPresent()) continue;
+                futures.forEach(future -> future.cancel(true));
+                break;
+            }
+            return result;
+        } catch (final ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @SuppressWarnings("try")
+    @NotNull
+    private Optional<Node> parse(@NotNull final File packFile, @NotNull final Parser parser, @NotNull final Logger logger) {
         logger.info("\t\tParsing pack file '" + packFile.getAbsolutePath() + "'...");
         final long singleStartTime = System.currentTimeMillis();
 
+        final CompileProfiler profiler = options.profiler();
+        final long startNanos = System.nanoTime();
         final String code;
+        workspace.inputs().read(packFile);
         logger.info("\t\tReading pack file content...");
-        try {
+        try (final CompileProfiler.Measurement ignored = profiler.measure(CompileProfiler.Phase.READ)) {
             code = Files.readString(packFile.toPath());
         } catch (final IOException e) {
-            workspaceError("\t\tCould not read pack file '" + packFile.getAbsolutePath() + "': " + e.getMessage());
+            logger.error("\t\tCould not read pack file '" + packFile.getAbsolutePath() + "': " + e.getMessage(), LoggingLevel.CONVERTING_ERROR);
             e.printStackTrace(logger);
             return Optional.empty();
         }
+        final String hash = cache == null ? null : cache.hash(code);
+        final Optional<Node> cached = hash == null ? Optional.empty() : cache.load(hash, packFile);
+        if (cached.isPresent()) {
+            profiler.count(CompileProfiler.Counter.CACHED_FILES, 1);
+            profiler.file(packFile, System.nanoTime() - startNanos);
+            logger.log("\t\tLoaded unchanged pack file '" + packFile.getAbsolutePath() + "' from the build cache in " + (System.currentTimeMillis() - singleStartTime) + "ms.", LoggingLevel.SUCCESS);
+            return cached;
+        }
         final List<String> content = Arrays.stream(code.split("\n")).toList();
 
-        parser.parse(packFile, code, content);
+        final List<Token> tokens;
+        try (final CompileProfiler.Measurement ignored = profiler.measure(CompileProfiler.Phase.LEX)) {
+            tokens = parser.tokenize(packFile, code, content);
+        }
+        try (final CompileProfiler.Measurement ignored = profiler.measure(CompileProfiler.Phase.PARSE)) {
+            parser.parse(tokens, content);
+        }
         final Optional<Node> tree = parser.tree();
 
-        final boolean success = tree.isPresent() && new TreeAnalyzer(logger).analyze(tree.get(), content);
+        final boolean success;
+        try (final CompileProfiler.Measurement ignored = profiler.measure(CompileProfiler.Phase.ANALYZE)) {
+            success = tree.isPresent() && new TreeAnalyzer(logger).analyze(tree.get(), content);
+        }
+        profiler.file(packFile, System.nanoTime() - startNanos);
         if (!success) {
-            workspaceError("Could not parse pack file '" + packFile.getAbsolutePath() + "'.");
+            logger.error("Could not parse pack file '" + packFile.getAbsolutePath() + "'.", LoggingLevel.CONVERTING_ERROR);
             return Optional.empty();
         }
+        if (hash != null) cache.store(hash, packFile, tree.get());
         final long singleEndTime = System.currentTimeMillis();
 
         logger.log("\t\tSuccessfully parsed pack file '" + packFile.getAbsolutePath() + "' in " + (singleEndTime - singleStartTime) + "ms.", LoggingLevel.SUCCESS);
@@ -478,4 +602,4 @@ public class PackWorkspaceBuilder {
     }
 
 
-}
+}
\ No newline at end of file
@@ -0,0 +1,124 @@
+package org.crayne.repack.core;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// every file of the workspace with its size and modification time, collected by the one walk that also finds the pack files.
+// textures, models and copy sources are looked up here instead of asking the file system again for every reference.
+// a file outside of the walked folders (e.g. '../shared/texture.png', or behind a linked folder) is looked up once and then remembered.
+// the index matches names exactly, so a reference that only differs in case from a walked file is asked from the file system, which
+// finds it on case-insensitive file systems (windows, macos) and does not on the others
+public class WorkspaceIndex {
+
+    public record Entry(@NotNull File file, long size, long modified) {}
+
+    @NotNull
+    private final Map<Path, Entry> files;
+
+    @NotNull
+    private final Set<Path> directories;
+
+    @NotNull
+    private final Set<Path> absent;
+
+    // every walked file in lower case
+    @NotNull
+    private final Set<String> folded;
+
+    public WorkspaceIndex() {
+        this.files = new ConcurrentHashMap<>();
+        this.directories = ConcurrentHashMap.newKeySet();
+        this.absent = ConcurrentHashMap.newKeySet();
+        this.folded = ConcurrentHashMap.newKeySet();
+    }
+
+    @NotNull
+    private static Path key(@NotNull final Path path) {
+        return path.toAbsolutePath().normalize();
+    }
+
+    @NotNull
+    private static String fold(@NotNull final Path key) {
+        return key.toString().toLowerCase(Locale.ROOT);
+    }
+
+    // adds every file below the given folder and returns them, in no particular order
+    @NotNull
+    public List<Entry> walk(@NotNull final File root) throws IOException {
+        final List<Entry> walked = new ArrayList<>();
+        Files.walkFileTree(root.toPath(), new SimpleFileVisitor<>() {
+            @NotNull
+            public FileVisitResult preVisitDirectory(@NotNull final Path directory, @NotNull final BasicFileAttributes attributes) {
+                directories.add(key(directory));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @NotNull
+            public FileVisitResult visitFile(@NotNull final Path path, @NotNull final BasicFileAttributes attributes) {
+                // a linked folder is not walked, so everything inside it is looked up on demand
+                final BasicFileAttributes target = attributes.isSymbolicLink() ? followed(path).orElse(null) : attributes;
+                if (target == null || !target.isRegularFile()) return FileVisitResult.CONTINUE;
+
+                final Entry entry = entry(path, target);
+                final Path key = key(path);
+                files.put(key, entry);
+                folded.add(fold(key));
+                walked.add(entry);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return walked;
+    }
+
+    @NotNull
+    private static Optional<BasicFileAttributes> followed(@NotNull final Path path) {
+        try {
+            return Optional.of(Files.readAttributes(path, BasicFileAttributes.class));
+        } catch (final IOException e) {
+            return Optional.empty();
+        }
+    }
+
+    @NotNull
+    private static Entry entry(@NotNull final Path path, @NotNull final BasicFileAttributes attributes) {
+        return new Entry(path.toFile(), attributes.size(), attributes.lastModifiedTime().toMillis());
+    }
+
+    // the given file, if it is a regular file
+    @NotNull
+    public Optional<Entry> find(@NotNull final File file) {
+        final Path path = key(file.toPath());
+        final Entry entry = files.get(path);
+        if (entry != null) return Optional.of(entry);
+        if (absent.contains(path)) return Optional.empty();
+
+        // everything inside a walked folder was seen already, unless the file system ignores case
+        final Path parent = path.getParent();
+        if (parent != null && directories.contains(parent) && !folded.contains(fold(path))) return Optional.empty();
+
+        final Optional<BasicFileAttributes> attributes = followed(path).filter(BasicFileAttributes::isRegularFile);
+        if (attributes.isEmpty()) {
+            absent.add(path);
+            return Optional.empty();
+        }
+        final Entry found = entry(path, attributes.get());
+        files.put(path, found);
+        return Optional.of(found);
+    }
+
+    public boolean isFile(@NotNull final File file) {
+        return find(file).isPresent();
+    }
+
+}
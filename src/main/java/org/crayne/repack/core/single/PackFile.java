@@ -3,6 +3,7 @@ package org.crayne.repack.core.single;
 import org.crayne.repack.core.single.predicate.PackPredicate;
 import org.crayne.repack.util.StringUtil;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.util.ArrayList;
@@ -11,7 +12,7 @@ import java.util.List;
 public class PackFile {
 
     @NotNull
-    private final List<PackVariable> variables;
+    private final VariableScope variables;
 
     @NotNull
     private final List<PackPredicate> matches;
@@ -23,7 +24,12 @@ public class PackFile {
     private final File root;
 
     public PackFile(@NotNull final File file, @NotNull final File root) {
-        this.variables = new ArrayList<>();
+        this(file, root, null);
+    }
+
+    // the lets of this file can see the given scope, usually the globals of the workspace
+    public PackFile(@NotNull final File file, @NotNull final File root, @Nullable final VariableScope globals) {
+        this.variables = new VariableScope(globals);
         this.matches = new ArrayList<>();
         this.file = file;
         this.root = root;
@@ -36,6 +42,11 @@ public class PackFile {
 
     @NotNull
     public List<PackVariable> variables() {
+        return variables.variables();
+    }
+
+    @NotNull
+    public VariableScope scope() {
         return variables;
     }
 
@@ -50,11 +61,11 @@ public class PackFile {
     }
 
     public void defineVariable(@NotNull final PackVariable variable) {
-        variables.add(variable);
+        variables.define(variable);
     }
 
     public boolean variableDefined(@NotNull final String name) {
-        return variables.stream().anyMatch(v -> v.name().equals(name));
+        return variables.defined(name);
     }
 
     public void definePredicate(@NotNull final PackPredicate predicate) {
@@ -64,7 +75,7 @@ public class PackFile {
     @NotNull
     public String toString() {
         return "PackFile {\n" +
-                ("variables = " + StringUtil.stringOf(variables) +
+                ("variables = " + StringUtil.stringOf(variables.variables()) +
                 ", \nmatches = " + StringUtil.stringOf(matches)).indent(3) +
                 '}';
     }
@@ -0,0 +1,59 @@
+package org.crayne.repack.core.single;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+// the variables of one scope (the globals of a workspace, or the lets of a pack file), hashed by name.
+// a file scope sees the global scope as its parent. lookups ask the parent first, so a global always wins over a let of the same name
+public class VariableScope {
+
+    @Nullable
+    private final VariableScope parent;
+
+    @NotNull
+    private final List<PackVariable> variables;
+
+    @NotNull
+    private final Map<String, PackVariable> byName;
+
+    public VariableScope() {
+        this(null);
+    }
+
+    public VariableScope(@Nullable final VariableScope parent) {
+        this.parent = parent;
+        this.variables = new ArrayList<>();
+        this.byName = new HashMap<>();
+    }
+
+    // every variable of this scope, in the order they were defined
+    @NotNull
+    public List<PackVariable> variables() {
+        return Collections.unmodifiableList(variables);
+    }
+
+    // redefining a name keeps the first definition visible, like the error for it says
+    public void define(@NotNull final PackVariable variable) {
+        variables.add(variable);
+        byName.putIfAbsent(variable.name(), variable);
+    }
+
+    // whether this scope itself defines the given name, not looking at the parent
+    public boolean defined(@NotNull final String name) {
+        return byName.containsKey(name);
+    }
+
+    @NotNull
+    public Optional<PackVariable> lookup(@NotNull final String name) {
+        return Optional.ofNullable(find(name));
+    }
+
+    @Nullable
+    PackVariable find(@NotNull final String name) {
+        final PackVariable inParent = parent == null ? null : parent.find(name);
+        return inParent != null ? inParent : byName.get(name);
+    }
+
+}
@@ -0,0 +1,79 @@
+package org.crayne.repack.core.single;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// a string with $(variable) references, split up once into the plain text and the names in between,
+// so filling it in is a hash lookup per reference instead of searching and replacing through the whole string
+public class VariableTemplate {
+
+    @NotNull
+    private static final Pattern REFERENCE = Pattern.compile("\\$\\((.*?)\\)");
+
+    // the plain text before every reference, and after the last one: literals.length == names.length + 1
+    @NotNull
+    private final String[] literals;
+
+    @NotNull
+    private final String[] names;
+
+    private final int literalLength;
+
+    private VariableTemplate(@NotNull final String[] literals, @NotNull final String[] names) {
+        this.literals = literals;
+        this.names = names;
+        int length = 0;
+        for (final String literal : literals) length += literal.length();
+        this.literalLength = length;
+    }
+
+    @NotNull
+    public static VariableTemplate compile(@NotNull final String string) {
+        final Matcher matcher = REFERENCE.matcher(string);
+        if (!matcher.find()) return new VariableTemplate(new String[] {string}, new String[0]);
+
+        final List<String> literals = new ArrayList<>();
+        final List<String> names = new ArrayList<>();
+        int last = 0;
+        do {
+            literals.add(string.substring(last, matcher.start()));
+            names.add(matcher.group(1));
+            last = matcher.end();
+        } while (matcher.find());
+        literals.add(string.substring(last));
+        return new VariableTemplate(literals.toArray(String[]::new), names.toArray(String[]::new));
+    }
+
+    // the first referenced name that the given scope cannot see, if any
+    @NotNull
+    public Optional<String> undefined(@NotNull final VariableScope scope) {
+        for (final String name : names) {
+            if (scope.find(name) == null) return Optional.of(name);
+        }
+        return Optional.empty();
+    }
+
+    // empty if any of the referenced variables is not defined
+    @NotNull
+    public Optional<String> evaluate(@NotNull final VariableScope scope) {
+        if (names.length == 0) return Optional.of(literals[0]);
+
+        final PackVariable[] values = new PackVariable[names.length];
+        int length = literalLength;
+        for (int i = 0; i < names.length; i++) {
+            final PackVariable variable = scope.find(names[i]);
+            if (variable == null) return Optional.empty();
+            values[i] = variable;
+            length += variable.value().length();
+        }
+        final StringBuilder result = new StringBuilder(length);
+        for (int i = 0; i < names.length; i++) result.append(literals[i]).append(values[i].value());
+        return Optional.of(result.append(literals[names.length]).toString());
+    }
+
+}
@@ -5,7 +5,7 @@ import org.crayne.repack.parsing.lexer.Token;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.stream.Collectors;
 
@@ -15,9 +15,11 @@ public class PackCopyPredicate implements PackPredicate {
     private final Map<String, String> copyFiles;
 
     public PackCopyPredicate(@NotNull final Collection<PackCopyFromToPredicate> copyFromToPredicates) {
-        copyFiles = new HashMap<>(copyFromToPredicates.stream()
-                .map(p -> Map.entry(p.key(), p.value()))
-                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue)));
+        // kept in the order of the statement, since that decides which copy gets a destination that is used twice
+        copyFiles = copyFromToPredicates.stream()
+                .collect(Collectors.toMap(PackCopyFromToPredicate::key, PackCopyFromToPredicate::value, (a, b) -> {
+                    throw new IllegalStateException("Duplicate copy source");
+                }, LinkedHashMap::new));
     }
 
     @NotNull
@@ -18,13 +18,13 @@ public class PackMatchPredicate implements PackPredicate {
     private final int weight;
 
     public PackMatchPredicate(@NotNull final Collection<PackSimplePredicate> matchPredicates, final int weight) {
-        this.predicates = new HashSet<>();
+        this.predicates = new LinkedHashSet<>();
         this.matchPredicates = new ArrayList<>(matchPredicates);
         this.weight = weight;
     }
 
     public PackMatchPredicate(@NotNull final Collection<PackSimplePredicate> matchPredicates, @NotNull final Collection<PackPredicate> predicates, final int weight) {
-        this.predicates = new HashSet<>(predicates);
+        this.predicates = new LinkedHashSet<>(predicates);
         this.matchPredicates = new ArrayList<>(matchPredicates);
         this.weight = weight;
     }
@@ -53,6 +53,12 @@ public class PackMatchPredicate implements PackPredicate {
         return weight;
     }
 
+    // same as !keys().isEmpty(), without collecting every key of every predicate first
+    public boolean hasKeys() {
+        for (final PackPredicate predicate : predicates) if (!predicate.keys().isEmpty()) return true;
+        return false;
+    }
+
     @NotNull
     public List<Token> keys() {
         return predicates.stream().map(PackPredicate::keys).flatMap(Collection::stream).toList();
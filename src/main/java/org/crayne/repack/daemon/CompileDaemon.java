@@ -0,0 +1,339 @@
+package org.crayne.repack.daemon;
+
+import org.crayne.repack.commandline.CommandLineInterface;
+import org.crayne.repack.core.BuildCache;
+import org.crayne.repack.util.logging.Logger;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.net.ProtocolException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// a long-running compiler listening on a unix domain socket. every connection carries one request, and the log output of a compile is
+// streamed back to the client while it runs. since the jvm stays alive, the item registry, the expansion cache, the jit and one build cache
+// per workspace (remembering its parsed trees in memory) stay warm from one compile to the next. requests are handled one after another
+public class CompileDaemon {
+
+    static final int PROTOCOL = 2;
+
+    // requests
+    static final byte COMPILE = 0, STOP = 1;
+
+    // response frames. a refused compile tells the client to compile on its own instead
+    static final byte OUTPUT = 0, EXIT = 1, REFUSED = 2;
+
+    // far more than any command line needs, but small enough that a broken request cannot exhaust the memory of the daemon
+    static final int MAX_ARGUMENTS = 1024;
+
+    private static final long CLIENT_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    @NotNull
+    private final Logger logger;
+
+    @NotNull
+    private final Path socket;
+
+    @NotNull
+    private final Map<Path, BuildCache> caches;
+
+    // only clients of the same compiler are served, so an upgraded client never gets the output of an old daemon
+    @NotNull
+    private final String compiler;
+
+    // a client that does not send its request, or stops reading the output, within this time is disconnected,
+    // since requests are handled one after another and it would block every other client
+    private final long clientTimeoutMillis;
+
+    @NotNull
+    private final ScheduledThreadPoolExecutor watchdog;
+
+    public CompileDaemon(@NotNull final Logger logger, @NotNull final Path socket) {
+        this(logger, socket, CLIENT_TIMEOUT_MILLIS);
+    }
+
+    CompileDaemon(@NotNull final Logger logger, @NotNull final Path socket, final long clientTimeoutMillis) {
+        this.logger = logger;
+        this.socket = socket;
+        this.caches = new ConcurrentHashMap<>();
+        this.compiler = BuildCache.compilerKey();
+        this.clientTimeoutMillis = clientTimeoutMillis;
+        this.watchdog = new ScheduledThreadPoolExecutor(1, r -> {
+            final Thread thread = new Thread(r, "RePack daemon watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // a deadline is set for every frame written, so cancelled ones must not pile up until they would have run
+        this.watchdog.setRemoveOnCancelPolicy(true);
+    }
+
+    // one daemon per user, in a folder only that user can access, so no one else can put a socket where the client looks for one
+    @NotNull
+    public static Path defaultSocket() {
+        final String runtime = System.getenv("XDG_RUNTIME_DIR");
+        final Path directory = runtime != null && !runtime.isBlank()
+                ? Path.of(runtime, "repack")
+                : Path.of(System.getProperty("user.home"), ".repack");
+        return directory.resolve("daemon.sock");
+    }
+
+    // why the given socket cannot be trusted to belong to a daemon of this user, if it cannot.
+    // both the socket and its folder have to belong to this user, and nobody else may access the folder
+    @NotNull
+    static Optional<String> untrusted(@NotNull final Path socket) {
+        final Path directory = socket.toAbsolutePath().getParent();
+        try {
+            final UserPrincipal user = socket.getFileSystem().getUserPrincipalLookupService().lookupPrincipalByName(System.getProperty("user.name"));
+            final UserPrincipal directoryOwner = Files.getOwner(directory, LinkOption.NOFOLLOW_LINKS);
+            if (!directoryOwner.equals(user)) return Optional.of("its folder '" + directory + "' belongs to " + directoryOwner.getName());
+            try {
+                final Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(directory, LinkOption.NOFOLLOW_LINKS);
+                if (!Collections.disjoint(permissions, EnumSet.of(PosixFilePermission.GROUP_READ, PosixFilePermission.GROUP_WRITE, PosixFilePermission.GROUP_EXECUTE,
+                        PosixFilePermission.OTHERS_READ, PosixFilePermission.OTHERS_WRITE, PosixFilePermission.OTHERS_EXECUTE)))
+                    return Optional.of("its folder '" + directory + "' can be accessed by other users (" + PosixFilePermissions.toString(permissions) + ")");
+            } catch (final UnsupportedOperationException ignored) {}
+
+            if (!Files.exists(socket, LinkOption.NOFOLLOW_LINKS)) return Optional.empty();
+            final UserPrincipal socketOwner = Files.getOwner(socket, LinkOption.NOFOLLOW_LINKS);
+            if (!socketOwner.equals(user)) return Optional.of("it belongs to " + socketOwner.getName());
+            return Optional.empty();
+        } catch (final IOException e) {
+            return Optional.of("its owner could not be checked (" + e.getMessage() + ")");
+        }
+    }
+
+    // creates the folder of the socket if needed, accessible by this user only
+    private boolean prepareDirectory() {
+        final Path directory = socket.toAbsolutePath().getParent();
+        try {
+            if (!Files.isDirectory(directory, LinkOption.NOFOLLOW_LINKS)) {
+                try {
+                    Files.createDirectories(directory, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+                } catch (final UnsupportedOperationException e) {
+                    Files.createDirectories(directory);
+                }
+            }
+        } catch (final IOException e) {
+            logger.error("Could not create the daemon folder '" + directory + "': " + e.getMessage());
+            return false;
+        }
+        final Optional<String> untrusted = untrusted(socket);
+        if (untrusted.isEmpty()) return true;
+        logger.error("Refusing to run the compile daemon on '" + socket + "', since " + untrusted.get() + ".");
+        return false;
+    }
+
+    @NotNull
+    private Optional<BuildCache> cache(@NotNull final File workspace) {
+        final Path key = workspace.toPath().toAbsolutePath().normalize();
+        final BuildCache cache = caches.get(key);
+        if (cache != null) return Optional.of(cache);
+        final Optional<BuildCache> opened = BuildCache.of(workspace, logger);
+        opened.ifPresent(c -> caches.put(key, c));
+        return opened;
+    }
+
+    // blocks until a client asks the daemon to stop; false if it could not be started at all
+    public boolean run() {
+        if (!prepareDirectory()) return false;
+        if (Files.exists(socket)) {
+            if (DaemonClient.reachable(socket)) {
+                logger.error("A compile daemon is already running on '" + socket + "'.");
+                return false;
+            }
+            try {
+                Files.deleteIfExists(socket);
+            } catch (final IOException e) {
+                logger.error("Could not delete stale daemon socket '" + socket + "': " + e.getMessage());
+                return false;
+            }
+        }
+        final Thread cleanup = new Thread(this::deleteSocket);
+        try (final ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(socket));
+            Runtime.getRuntime().addShutdownHook(cleanup);
+            try {
+                Files.setPosixFilePermissions(socket, PosixFilePermissions.fromString("rw-------"));
+            } catch (final UnsupportedOperationException ignored) {}
+
+            logger.info("Compile daemon listening on '" + socket + "'; stop it using 'daemon --stop'.");
+            boolean running = true;
+            while (running) {
+                try (final SocketChannel client = server.accept()) {
+                    running = handle(client);
+                } catch (final EOFException e) {
+                    // a client that only checked whether the daemon is running
+                } catch (final ClosedChannelException e) {
+                    // only the watchdog ever closes the connection while it is handled
+                    logger.warn("Disconnected a client that stalled for more than " + clientTimeoutMillis + "ms.");
+                } catch (final ProtocolException e) {
+                    logger.warn("Disconnected a client that sent an invalid request: " + e.getMessage());
+                } catch (final IOException e) {
+                    logger.warn("Lost connection to client: " + e.getMessage());
+                } catch (final RuntimeException e) {
+                    logger.error("Failed to handle a client: " + e);
+                    e.printStackTrace(logger);
+                }
+            }
+            logger.info("Compile daemon stopped.");
+            return true;
+        } catch (final IOException e) {
+            logger.error("Could not run compile daemon on '" + socket + "': " + e.getMessage());
+            e.printStackTrace(logger);
+            return false;
+        } finally {
+            watchdog.shutdownNow();
+            deleteSocket();
+            try {
+                Runtime.getRuntime().removeShutdownHook(cleanup);
+            } catch (final IllegalStateException ignored) {}
+        }
+    }
+
+    private void deleteSocket() {
+        try {
+            Files.deleteIfExists(socket);
+        } catch (final IOException ignored) {}
+    }
+
+    // closes the connection once the given time passed, unless the returned deadline was cancelled before.
+    // unix domain sockets have no read timeout, but closing the channel ends any read or write blocked on it
+    @NotNull
+    private ScheduledFuture<?> deadline(@NotNull final SocketChannel client) {
+        return watchdog.schedule(() -> {
+            try {
+                client.close();
+            } catch (final IOException ignored) {}
+        }, clientTimeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // false once the daemon was asked to stop
+    private boolean handle(@NotNull final SocketChannel client) throws IOException {
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(client)));
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(client)));
+        final Logger clientLogger = logger.redirected(new FrameOutputStream(out, client));
+
+        final ScheduledFuture<?> requestDeadline = deadline(client);
+        final int protocol = in.readInt();
+        if (protocol != PROTOCOL) {
+            requestDeadline.cancel(false);
+            refuse(out, client, "The running compile daemon speaks protocol version " + PROTOCOL + ", but the client speaks version " + protocol + ".");
+            return true;
+        }
+        final String clientCompiler = in.readUTF();
+        final byte request = in.readByte();
+        final int count = in.readInt();
+        if (count < 0 || count > MAX_ARGUMENTS) throw new ProtocolException("argument count " + count + " is not between 0 and " + MAX_ARGUMENTS);
+        final List<String> arguments = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) arguments.add(in.readUTF());
+        requestDeadline.cancel(false);
+
+        if (request == STOP) {
+            logger.info("Stopping compile daemon on request of a client...");
+            exit(out, client, 0);
+            return false;
+        }
+        // stopping is fine either way, since that is how an outdated daemon is replaced
+        if (!clientCompiler.equals(compiler)) {
+            logger.warn("Refused to compile for a client of a different RePack build (" + clientCompiler + ").");
+            refuse(out, client, "The running compile daemon was started from a different RePack build (" + compiler + ").");
+            return true;
+        }
+        logger.info(">>> Compiling for client: compile " + String.join(" ", arguments));
+        final long startedMillis = System.currentTimeMillis();
+        int exitCode;
+        try {
+            exitCode = CommandLineInterface.compile(arguments, clientLogger, this::cache);
+        } catch (final RuntimeException e) {
+            clientLogger.error("The compile daemon failed to compile: " + e.getMessage());
+            e.printStackTrace(clientLogger);
+            exitCode = 1;
+        }
+        exit(out, client, exitCode);
+        logger.info("Finished compile with exit code " + exitCode + " in " + (System.currentTimeMillis() - startedMillis) + "ms.");
+        return true;
+    }
+
+    private void refuse(@NotNull final DataOutputStream out, @NotNull final SocketChannel client, @NotNull final String reason) throws IOException {
+        final ScheduledFuture<?> deadline = deadline(client);
+        try {
+            out.writeByte(REFUSED);
+            out.writeUTF(reason);
+            out.flush();
+        } finally {
+            deadline.cancel(false);
+        }
+    }
+
+    private void exit(@NotNull final DataOutputStream out, @NotNull final SocketChannel client, final int exitCode) throws IOException {
+        final ScheduledFuture<?> deadline = deadline(client);
+        try {
+            out.writeByte(EXIT);
+            out.writeInt(exitCode);
+            out.flush();
+        } finally {
+            deadline.cancel(false);
+        }
+    }
+
+    // every write becomes one output frame; the logger flushes after every line, so the client sees the log as it happens.
+    // a client that stops reading is disconnected once a frame could not be written in time
+    private class FrameOutputStream extends OutputStream {
+
+        @NotNull
+        private final DataOutputStream out;
+
+        @NotNull
+        private final SocketChannel client;
+
+        private FrameOutputStream(@NotNull final DataOutputStream out, @NotNull final SocketChannel client) {
+            this.out = out;
+            this.client = client;
+        }
+
+        public void write(final int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        public void write(@NotNull final byte[] b, final int off, final int len) throws IOException {
+            synchronized (out) {
+                final ScheduledFuture<?> deadline = deadline(client);
+                try {
+                    out.writeByte(OUTPUT);
+                    out.writeInt(len);
+                    out.write(b, off, len);
+                } finally {
+                    deadline.cancel(false);
+                }
+            }
+        }
+
+        public void flush() throws IOException {
+            synchronized (out) {
+                final ScheduledFuture<?> deadline = deadline(client);
+                try {
+                    out.flush();
+                } finally {
+                    deadline.cancel(false);
+                }
+            }
+        }
+
+    }
+
+}
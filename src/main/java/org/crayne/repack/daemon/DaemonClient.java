@@ -0,0 +1,134 @@
+package org.crayne.repack.daemon;
+
+import org.crayne.repack.core.BuildCache;
+import org.crayne.repack.util.logging.Logger;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+// sends requests to a running compile daemon and prints the output it streams back
+public class DaemonClient {
+
+    @NotNull
+    private final Logger logger;
+
+    @NotNull
+    private final Path socket;
+
+    public DaemonClient(@NotNull final Logger logger) {
+        this(logger, CompileDaemon.defaultSocket());
+    }
+
+    public DaemonClient(@NotNull final Logger logger, @NotNull final Path socket) {
+        this.logger = logger;
+        this.socket = socket;
+    }
+
+    static boolean reachable(@NotNull final Path socket) {
+        try {
+            SocketChannel.open(UnixDomainSocketAddress.of(socket)).close();
+            return true;
+        } catch (final IOException | UnsupportedOperationException e) {
+            return false;
+        }
+    }
+
+    @NotNull
+    private Optional<SocketChannel> connect() {
+        if (!Files.exists(socket, LinkOption.NOFOLLOW_LINKS)) return Optional.empty();
+        final Optional<String> untrusted = CompileDaemon.untrusted(socket);
+        if (untrusted.isPresent()) {
+            logger.warn("Ignoring the compile daemon socket '" + socket + "', since " + untrusted.get() + ".");
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(SocketChannel.open(UnixDomainSocketAddress.of(socket)));
+        } catch (final IOException | UnsupportedOperationException e) {
+            return Optional.empty();
+        }
+    }
+
+    // runs the compile described by the arguments following 'compile' on the running daemon and returns its exit code,
+    // or nothing if no daemon is running or it refused. paths are made absolute first, since the daemon runs in a different working directory
+    @NotNull
+    public Optional<Integer> compile(@NotNull final List<String> arguments) {
+        // the daemon would drop such a request, so do not even ask
+        if (arguments.size() > CompileDaemon.MAX_ARGUMENTS) return Optional.empty();
+        final Optional<SocketChannel> connection = connect();
+        if (connection.isEmpty()) return Optional.empty();
+
+        logger.info("Compiling using the compile daemon at '" + socket + "'...");
+        try (final SocketChannel channel = connection.get()) {
+            final Optional<Integer> exitCode = request(channel, CompileDaemon.COMPILE, arguments.stream().map(DaemonClient::absolute).toList());
+            if (exitCode.isEmpty()) logger.warn("Compiling in this process instead; restart the daemon using 'daemon --stop' and 'daemon' to use it again.");
+            return exitCode;
+        } catch (final IOException e) {
+            logger.error("Lost connection to the compile daemon: " + e.getMessage());
+            return Optional.of(1);
+        }
+    }
+
+    public boolean stop() {
+        final Optional<SocketChannel> connection = connect();
+        if (connection.isEmpty()) {
+            logger.error("No compile daemon is running at '" + socket + "'.");
+            return false;
+        }
+        try (final SocketChannel channel = connection.get()) {
+            if (request(channel, CompileDaemon.STOP, List.of()).isEmpty()) {
+                logger.error("Could not stop the compile daemon.");
+                return false;
+            }
+            logger.info("Stopped the compile daemon.");
+            return true;
+        } catch (final IOException e) {
+            logger.error("Could not stop the compile daemon: " + e.getMessage());
+            return false;
+        }
+    }
+
+    @NotNull
+    private static String absolute(@NotNull final String argument) {
+        if (!argument.startsWith("--")) return Path.of(argument).toAbsolutePath().toString();
+        if (argument.startsWith("--profile=") && argument.length() > "--profile=".length())
+            return "--profile=" + Path.of(argument.substring("--profile=".length())).toAbsolutePath();
+        return argument;
+    }
+
+    // the exit code of the request, or nothing if the daemon refused it
+    @NotNull
+    private Optional<Integer> request(@NotNull final SocketChannel channel, final byte request, @NotNull final List<String> arguments) throws IOException {
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+        out.writeInt(CompileDaemon.PROTOCOL);
+        out.writeUTF(BuildCache.compilerKey());
+        out.writeByte(request);
+        out.writeInt(arguments.size());
+        for (final String argument : arguments) out.writeUTF(argument);
+        out.flush();
+
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+        while (true) {
+            final byte frame = in.readByte();
+            if (frame == CompileDaemon.EXIT) return Optional.of(in.readInt());
+            if (frame == CompileDaemon.REFUSED) {
+                logger.warn(in.readUTF());
+                return Optional.empty();
+            }
+            if (frame != CompileDaemon.OUTPUT) throw new IOException("unexpected frame " + frame);
+
+            final byte[] output = new byte[in.readInt()];
+            in.readFully(output);
+            System.out.write(output);
+            System.out.flush();
+        }
+    }
+
+}
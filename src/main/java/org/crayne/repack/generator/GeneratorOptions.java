@@ -0,0 +1,119 @@
+package org.crayne.repack.generator;
+
+import org.jetbrains.annotations.NotNull;
+
+public class GeneratorOptions {
+
+    private long seed;
+    private int files;
+    private int rules;
+    private int keys;
+    private int variables;
+    private int copies;
+    private int textures;
+
+    public GeneratorOptions() {
+        this.seed = 0;
+        this.files = 10;
+        this.rules = 100;
+        this.keys = 4;
+        this.variables = 2;
+        this.copies = 1;
+        this.textures = 64;
+    }
+
+    private static int atLeast(final int min, final int value, @NotNull final String name) {
+        if (value < min) throw new IllegalArgumentException(name + " must be at least " + min + ", got " + value);
+        return value;
+    }
+
+    public long seed() {
+        return seed;
+    }
+
+    @NotNull
+    public GeneratorOptions seed(final long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    // amount of .rep files, not counting the pack.rep holding the global variables
+    public int files() {
+        return files;
+    }
+
+    @NotNull
+    public GeneratorOptions files(final int files) {
+        this.files = atLeast(1, files, "File count");
+        return this;
+    }
+
+    // amount of match blocks, spread evenly over all files
+    public int rules() {
+        return rules;
+    }
+
+    @NotNull
+    public GeneratorOptions rules(final int rules) {
+        this.rules = atLeast(0, rules, "Rule count");
+        return this;
+    }
+
+    // amount of item keys per match block
+    public int keys() {
+        return keys;
+    }
+
+    @NotNull
+    public GeneratorOptions keys(final int keys) {
+        this.keys = atLeast(1, keys, "Key count");
+        return this;
+    }
+
+    // amount of variables defined per file
+    public int variables() {
+        return variables;
+    }
+
+    @NotNull
+    public GeneratorOptions variables(final int variables) {
+        this.variables = atLeast(1, variables, "Variable count");
+        return this;
+    }
+
+    // amount of copy statements per file
+    public int copies() {
+        return copies;
+    }
+
+    @NotNull
+    public GeneratorOptions copies(final int copies) {
+        this.copies = atLeast(0, copies, "Copy count");
+        return this;
+    }
+
+    // amount of distinct placeholder textures the rules pick from
+    public int textures() {
+        return textures;
+    }
+
+    @NotNull
+    public GeneratorOptions textures(final int textures) {
+        this.textures = atLeast(1, textures, "Texture count");
+        return this;
+    }
+
+    @NotNull
+    public String toString() {
+        return "GeneratorOptions {" +
+                "seed = " + seed +
+                ", files = " + files +
+                ", rules = " + rules +
+                ", keys = " + keys +
+                ", variables = " + variables +
+                ", copies = " + copies +
+                ", textures = " + textures +
+                '}';
+    }
+
+}
@@ -0,0 +1,185 @@
+package org.crayne.repack.generator;
+
+import org.crayne.repack.util.logging.Logger;
+import org.crayne.repack.util.logging.LoggingLevel;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+
+// generates a synthetic, but valid workspace for stress tests and benchmarks. the same options (including the seed)
+// always produce the exact same workspace
+public class WorkspaceGenerator {
+
+    // signature and header of a 1x1 rgba png, followed by the image data chunk that holds the pixel of each texture
+    @NotNull
+    private static final byte[] PNG_HEADER = Base64.getDecoder().decode("iVBORw0KGgoAAAANSUhEUgAAAAEAAAABCAYAAAAfFcSJ");
+
+    @NotNull
+    private static final byte[] PNG_END = Base64.getDecoder().decode("AAAAAElFTkSuQmCC");
+
+    @NotNull
+    private static final List<String> KEYS = List.of(
+            "*_helmet", "*_chestplate", "*_leggings", "*_boots", "*_sword", "*_pickaxe", "*_axe", "*_shovel", "*_hoe",
+            "diamond_*", "iron_*", "golden_*", "netherite_*", "leather_*", "chainmail_*", "*_ingot", "*_planks", "*_log",
+            "*_wool", "*_bed", "*_banner", "*_spawn_egg", "bow", "crossbow", "trident", "shield", "stick", "minecraft:stone",
+            "minecraft:*_door", "*_boat"
+    );
+
+    // at most this many pack files per directory
+    private static final int FILES_PER_DIRECTORY = 100;
+
+    @NotNull
+    private final Logger logger;
+
+    @NotNull
+    private final GeneratorOptions options;
+
+    public WorkspaceGenerator(@NotNull final Logger logger, @NotNull final GeneratorOptions options) {
+        this.logger = logger;
+        this.options = options;
+    }
+
+    @NotNull
+    public GeneratorOptions options() {
+        return options;
+    }
+
+    @NotNull
+    public static String textureName(final int texture) {
+        return "textures/texture_" + texture;
+    }
+
+    // every generated pack file, as path relative to the workspace root -> source code, in a stable order
+    @NotNull
+    public Map<String, String> packFiles() {
+        final Random random = new Random(options.seed());
+        final Map<String, String> result = new LinkedHashMap<>();
+        result.put("pack.rep", globals());
+
+        final int files = options.files();
+        for (int file = 0; file < files; file++) {
+            final int rules = options.rules() / files + (file < options.rules() % files ? 1 : 0);
+            result.put("pack/group_" + file / FILES_PER_DIRECTORY + "/file_" + file + ".rep", packFile(file, rules, random));
+        }
+        return result;
+    }
+
+    public boolean generate(@NotNull final File out) {
+        logger.info("Generating workspace (" + options + ")...");
+        final String[] existing = out.list();
+        if (existing != null && existing.length != 0) {
+            logger.error("Could not generate workspace: output directory '" + out.getAbsolutePath() + "' is not empty.");
+            return false;
+        }
+        try {
+            final File textures = new File(out, "textures");
+            Files.createDirectories(textures.toPath());
+            final int firstPixel = new Random(options.seed()).nextInt();
+            for (int texture = 0; texture < options.textures(); texture++) {
+                Files.write(new File(out, textureName(texture) + ".png").toPath(), texturePng(firstPixel, texture));
+            }
+            for (final Map.Entry<String, String> packFile : packFiles().entrySet()) {
+                final File file = new File(out, packFile.getKey());
+                Files.createDirectories(file.getParentFile().toPath());
+                Files.writeString(file.toPath(), packFile.getValue());
+            }
+        } catch (final IOException e) {
+            logger.error("Could not generate workspace in '" + out.getAbsolutePath() + "': " + e.getMessage());
+            e.printStackTrace(logger);
+            return false;
+        }
+        logger.log("Successfully generated workspace to '" + out.getAbsolutePath() + "' (" + (options.files() + 1) + " pack files, "
+                + options.rules() + " rules, " + options.textures() + " textures).", LoggingLevel.SUCCESS);
+        return true;
+    }
+
+    // a valid 1x1 png with a pixel of its own. the pixel steps through all colors by an odd amount, so no two textures
+    // of a workspace share their content, while all of them have the same size, like textures that texture deduplication
+    // actually has to compare
+    @NotNull
+    private static byte[] texturePng(final int firstPixel, final int texture) {
+        final int pixel = firstPixel + texture * 0x9e3779b1;
+        // filter type of the only row, then the pixel as rgba
+        final byte[] row = {0, (byte) (pixel >>> 24), (byte) (pixel >>> 16), (byte) (pixel >>> 8), (byte) pixel};
+
+        // zlib stream with a single stored block, so its size never depends on the pixel
+        final Adler32 adler = new Adler32();
+        adler.update(row);
+        final ByteBuffer data = ByteBuffer.allocate(2 + 5 + row.length + 4)
+                .put((byte) 0x78).put((byte) 0x01)
+                .put((byte) 1).putShort(Short.reverseBytes((short) row.length)).putShort(Short.reverseBytes((short) ~row.length))
+                .put(row)
+                .putInt((int) adler.getValue());
+
+        final ByteBuffer chunk = ByteBuffer.allocate(4 + 4 + data.capacity() + 4);
+        chunk.putInt(data.capacity()).put("IDAT".getBytes(StandardCharsets.US_ASCII)).put(data.array());
+        final CRC32 crc = new CRC32();
+        crc.update(chunk.array(), 4, 4 + data.capacity());
+        chunk.putInt((int) crc.getValue());
+
+        return ByteBuffer.allocate(PNG_HEADER.length + chunk.capacity() + PNG_END.length)
+                .put(PNG_HEADER).put(chunk.array()).put(PNG_END).array();
+    }
+
+    @NotNull
+    private String globals() {
+        return """
+                global pack_name = "generated"
+                global pack_description = "generated workspace (seed %d)"
+                global pack_version = "1.19.2"
+                global textures = "textures"
+                """.formatted(options.seed());
+    }
+
+    @NotNull
+    private String packFile(final int file, final int rules, @NotNull final Random random) {
+        final StringBuilder result = new StringBuilder();
+        for (int variable = 0; variable < options.variables(); variable++) {
+            result.append("let name_").append(variable).append(" = \"file ").append(file).append(" name ").append(variable).append("\"\n");
+        }
+        result.append('\n');
+
+        for (int rule = 0; rule < rules; rule++) {
+            result.append("match {\n")
+                    .append("    display.Name = \"ipattern:*$(name_").append(random.nextInt(options.variables())).append(") ").append(rule).append("*\"\n")
+                    .append("} for {\n");
+
+            final List<String> keys = new ArrayList<>(KEYS);
+            Collections.shuffle(keys, random);
+            final List<String> chosen = keys.subList(0, Math.min(options.keys(), keys.size()));
+
+            if (random.nextInt(4) == 0) {
+                result.append("    armor {\n");
+                chosen.forEach(key -> result.append("        ").append(key).append('\n'));
+                result.append("    } = \"").append(texture(random)).append("\"\n");
+            } else {
+                result.append("    items {\n");
+                chosen.forEach(key -> result.append("        ").append(key).append(" = \"").append(texture(random)).append("\"\n"));
+                result.append("    }\n");
+            }
+            result.append("}\n");
+        }
+        if (options.copies() == 0) return result.toString();
+
+        result.append("copy {\n");
+        for (int copy = 0; copy < options.copies(); copy++) {
+            result.append("    \"").append(textureName(random.nextInt(options.textures()))).append(".png\" => \"assets/minecraft/textures/generated/file_")
+                    .append(file).append('_').append(copy).append(".png\"\n");
+        }
+        result.append("}\n");
+        return result.toString();
+    }
+
+    @NotNull
+    private String texture(@NotNull final Random random) {
+        return "$(textures)/texture_" + random.nextInt(options.textures());
+    }
+
+}
@@ -1,14 +1,11 @@
 package org.crayne.repack.parsing.lexer;
 
-import org.apache.commons.text.StringEscapeUtils;
 import org.crayne.repack.util.logging.Logger;
 import org.crayne.repack.util.logging.LoggingLevel;
-import org.crayne.repack.parsing.ast.NodeType;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.File;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.Callable;
@@ -19,13 +16,13 @@ public class Tokenizer {
     private final Logger logger;
 
     private final List<String> multiSpecial;
-    private final List<Token> result = new ArrayList<>();
+    private List<Token> result = new ArrayList<>();
     private char currentQuotes = 0;
     private Token beganString;
-    private String previous = null;
+    private int previous = NO_PREVIOUS;
     private boolean singleLineCommented = false;
     private boolean multilineCommented = false;
-    private StringBuilder currentToken = new StringBuilder();
+    private final StringBuilder currentToken = new StringBuilder();
     private int line = 1;
     private int column = 0;
     private File currentFile;
@@ -50,7 +47,38 @@ public class Tokenizer {
     }
 
     private static final String specials = ",(){}/+='\">";
-    private static final String stringEscapeRegex = splitKeepDelim("\\\\u[\\dA-Fa-f]{4}|\\\\\\d|\\\\[\"\\\\'tnbfr]").substring(1);
+
+    // only the previous token or character is remembered if it was a single character; anything longer can never be an escape or comment end
+    private static final int NO_PREVIOUS = -1;
+
+    private static final byte SPECIAL = 1;
+    private static final byte WHITESPACE = 2;
+    private static final byte DIGIT = 4;
+    private static final byte HEX_DIGIT = 8;
+    private static final byte SIMPLE_ESCAPE = 16;
+    private static final byte[] charClasses = new byte[128];
+
+    static {
+        for (char c = 0; c < charClasses.length; c++) {
+            if (Character.isWhitespace(c)) charClasses[c] |= WHITESPACE;
+            if (c >= '0' && c <= '9') charClasses[c] |= DIGIT | HEX_DIGIT;
+            if ((c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F')) charClasses[c] |= HEX_DIGIT;
+        }
+        for (final char c : specials.toCharArray()) charClasses[c] |= SPECIAL;
+        for (final char c : "\"\\'tnbfr".toCharArray()) charClasses[c] |= SIMPLE_ESCAPE;
+    }
+
+    private static boolean isClass(final char c, final byte charClass) {
+        return c < charClasses.length && (charClasses[c] & charClass) != 0;
+    }
+
+    private static boolean isSpecial(final char c) {
+        return isClass(c, SPECIAL);
+    }
+
+    private static boolean isWhitespace(final char c) {
+        return c < charClasses.length ? isClass(c, WHITESPACE) : Character.isWhitespace(c);
+    }
 
     public static boolean isSpecialToken(@NotNull final String s) {
         return specials.contains(s);
@@ -118,44 +146,126 @@ public class Tokenizer {
         return "\"" + string + "\"";
     }
 
-    private String fixEscapeCodes(@NotNull final String string) {
-        final boolean isLiteralString = isString(string) != null;
-        final String strippedQuotes = removeStringLiterals(string);
-        final String escapedCodes = strippedQuotes
-                .replace("\n", "\\n")
-                .replace("\"", "\\\"");
-        return isLiteralString ? addStringLiterals(escapedCodes) : escapedCodes;
+    // a single escape sequence as in \\u[\dA-Fa-f]{4}|\\\d|\\["\\'tnbfr], spanning exactly [from, to)
+    private static boolean isEscapeSequence(@NotNull final CharSequence s, final int from, final int to) {
+        if (s.charAt(from) != '\\') return false;
+        return switch (to - from) {
+            case 2 -> isClass(s.charAt(from + 1), (byte) (DIGIT | SIMPLE_ESCAPE));
+            case 6 -> s.charAt(from + 1) == 'u' && isHex(s, from + 2, to);
+            default -> false;
+        };
+    }
+
+    private static boolean isHex(@NotNull final CharSequence s, final int from, final int to) {
+        for (int i = from; i < to; i++) if (!isClass(s.charAt(i), HEX_DIGIT)) return false;
+        return true;
     }
 
-    private static String splitKeepDelim(@NotNull final String delimRegex) {
-        return "|((?=" + delimRegex + ")|(?<=" + delimRegex + "))";
+    private static boolean escapeSequenceStartsAt(@NotNull final CharSequence s, final int at) {
+        return (at + 2 <= s.length() && isEscapeSequence(s, at, at + 2)) || (at + 6 <= s.length() && isEscapeSequence(s, at, at + 6));
+    }
+
+    private static boolean escapeSequenceEndsAt(@NotNull final CharSequence s, final int at) {
+        return (at >= 2 && isEscapeSequence(s, at - 2, at)) || (at >= 6 && isEscapeSequence(s, at - 6, at));
     }
 
     public static boolean validEscapeSeq(@NotNull final String seq) {
-        return seq.matches("\\\\u[\\dA-Fa-f]{4}|\\\\\\d|\\\\[\"\\\\'tnbfr]");
+        return !seq.isEmpty() && isEscapeSequence(seq, 0, seq.length());
     }
 
     public boolean validEscapeSequences(@NotNull final String seq) {
-        for (final String escapeSequence : seq.split(stringEscapeRegex)) {
-            if (!validEscapeSeq(escapeSequence) && escapeSequence.startsWith("\\")) return false;
+        return validEscapeSequences((CharSequence) seq);
+    }
+
+    // the string is cut right before and right after every valid escape sequence; every piece starting with a backslash has to be one of them
+    private static boolean validEscapeSequences(@NotNull final CharSequence seq) {
+        final int length = seq.length();
+        int pieceStart = 0;
+        for (int at = 1; at <= length; at++) {
+            if (at < length && !escapeSequenceStartsAt(seq, at) && !escapeSequenceEndsAt(seq, at)) continue;
+            if (seq.charAt(pieceStart) == '\\' && !isEscapeSequence(seq, pieceStart, at)) return false;
+            pieceStart = at;
         }
         return true;
     }
 
-    private static <T> T getLast(@NotNull final List<T> list) {
-        return getLast(list, 1);
+    private static boolean isOctal(final char c) {
+        return c >= '0' && c <= '7';
+    }
+
+    // decodes escape sequences the same way StringEscapeUtils.unescapeJava does; unknown escapes lose their backslash
+    @NotNull
+    private static String unescapeJava(@NotNull final CharSequence literal) {
+        final int length = literal.length();
+        final StringBuilder decoded = new StringBuilder(length);
+        int i = 0;
+        while (i < length) {
+            final char c = literal.charAt(i);
+            if (c != '\\' || i + 1 >= length) {
+                if (c != '\\') decoded.append(c);
+                i++;
+                continue;
+            }
+            final char next = literal.charAt(i + 1);
+            if (isOctal(next)) {
+                int end = i + 2;
+                if (end < length && isOctal(literal.charAt(end))) {
+                    end++;
+                    if (end < length && next <= '3' && isOctal(literal.charAt(end))) end++;
+                }
+                int value = 0;
+                for (int j = i + 1; j < end; j++) value = value * 8 + (literal.charAt(j) - '0');
+                decoded.append((char) value);
+                i = end;
+                continue;
+            }
+            switch (next) {
+                case 'u' -> {
+                    i = unescapeUnicode(literal, i, decoded);
+                    continue;
+                }
+                case 'b' -> decoded.append('\b');
+                case 'n' -> decoded.append('\n');
+                case 't' -> decoded.append('\t');
+                case 'f' -> decoded.append('\f');
+                case 'r' -> decoded.append('\r');
+                case '\\', '"', '\'' -> decoded.append(next);
+                default -> {
+                    i++;
+                    continue;
+                }
+            }
+            i += 2;
+        }
+        return decoded.toString();
     }
 
-    private static <T> T getLast(@NotNull final List<T> list, final int backSeek) {
-        return list.get(list.size() - backSeek);
+    private static int unescapeUnicode(@NotNull final CharSequence literal, final int at, @NotNull final StringBuilder decoded) {
+        int i = 2;
+        while (at + i < literal.length() && literal.charAt(at + i) == 'u') i++;
+        if (at + i < literal.length() && literal.charAt(at + i) == '+') i++;
+
+        if (at + i + 4 > literal.length())
+            throw new IllegalArgumentException("Less than 4 hex digits in unicode value: '" + literal.subSequence(at, literal.length()) + "' due to end of CharSequence");
+
+        final String unicode = literal.subSequence(at + i, at + i + 4).toString();
+        try {
+            decoded.append((char) Integer.parseInt(unicode, 16));
+        } catch (final NumberFormatException e) {
+            throw new IllegalArgumentException("Unable to parse unicode value: " + unicode, e);
+        }
+        return at + i + 4;
     }
 
-    private static <T> void pop(@NotNull final List<T> list) {
-        list.remove(list.size() - 1);
+    private static boolean containsBackslash(@NotNull final CharSequence s) {
+        for (int i = 0; i < s.length(); i++) if (s.charAt(i) == '\\') return true;
+        return false;
     }
 
-    private static <T> void pop(@NotNull final List<T> list, final int amount) {
-        for (int i = 0; i < amount; i++) pop(list);
+    @NotNull
+    private static String unescapeStringLiteral(@NotNull final CharSequence literal) {
+        if (!containsBackslash(literal) || !validEscapeSequences(literal)) return literal.toString();
+        return unescapeJava(literal);
     }
 
     private Token tokenOf(@NotNull final String token) {
@@ -173,20 +283,20 @@ public class Tokenizer {
     private boolean appendToCurrentString() {
         if (currentQuotes != 0) {
             currentToken.append(atPos);
-            previous = "" + atPos;
+            previous = atPos;
             return true;
         }
         return false;
     }
 
     private boolean isPreviousEscape() {
-        return previous != null && previous.equals("\\");
+        return previous == '\\';
     }
 
     private void beginString() {
         beganString = currentToken();
         addCurrent();
-        setCurrent(atPos + "");
+        setCurrent(atPos);
         currentQuotes = atPos;
     }
 
@@ -194,10 +304,7 @@ public class Tokenizer {
         if (currentQuotes != atPos) return false;
 
         currentToken.append(atPos);
-        final String str = !validEscapeSequences(currentToken.toString()) ? currentToken.toString() : StringEscapeUtils.unescapeJava(currentToken.toString());
-
-        setCurrent(str);
-        addCurrent();
+        addToken(unescapeStringLiteral(currentToken));
         clearCurrent();
         currentQuotes = 0;
         return true;
@@ -229,21 +336,6 @@ public class Tokenizer {
         return false;
     }
 
-    private char nextChar = 0;
-    private char nextNextChar = 0;
-
-    private char lastCharCurrent() {
-        return currentToken.charAt(currentToken.toString().length() - 1);
-    }
-
-    private char nextCharCurrent() {
-        return nextChar;
-    }
-
-    private char nextNextCharCurrent() {
-        return nextNextChar;
-    }
-
     private void handleNewlines() {
         if (atPos != '\n') return;
 
@@ -257,7 +349,7 @@ public class Tokenizer {
     }
 
     private boolean handleWhitespaces() {
-        if (!Character.isWhitespace(atPos)) return false;
+        if (!isWhitespace(atPos)) return false;
 
         if (!currentToken.isEmpty()) {
             addCurrent();
@@ -267,20 +359,22 @@ public class Tokenizer {
         return true;
     }
 
-    private boolean handleComments(@NotNull final String multiTok) {
-        switch (multiTok) {
-            case "//" -> {
-                singleLineCommented = true;
-                clearCurrent();
-                return true;
-            }
-            case "/+" -> {
-                multilineCommented = true;
-                clearCurrent();
-                return true;
-            }
+    private boolean isCurrentSingle(final char c) {
+        return currentToken.length() == 1 && currentToken.charAt(0) == c;
+    }
+
+    private boolean handleComments() {
+        if (isCurrentSingle('/') && atPos == '/') {
+            singleLineCommented = true;
+            clearCurrent();
+            return true;
         }
-        if ((previous + atPos).equals("+/") && multilineCommented) {
+        if (isCurrentSingle('/') && atPos == '+') {
+            multilineCommented = true;
+            clearCurrent();
+            return true;
+        }
+        if (previous == '+' && atPos == '/' && multilineCommented) {
             multilineCommented = false;
             clearCurrent();
             return true;
@@ -289,60 +383,75 @@ public class Tokenizer {
     }
 
     private boolean isCurrentMultiToken() {
-        return isMultiToken(currentToken.toString());
+        return isMultiToken(currentToken);
     }
 
-    private boolean isMultiToken(@NotNull final String multiTok) {
-        return Arrays.stream(multiTok.split("")).allMatch(Tokenizer::isSpecialToken);
+    private static boolean isMultiToken(@NotNull final CharSequence multiTok) {
+        for (int i = 0; i < multiTok.length(); i++) if (!isSpecial(multiTok.charAt(i))) return false;
+        return true;
     }
 
     private boolean isCurrentNotBlank() {
-        return !currentToken.toString().isBlank();
+        for (int i = 0; i < currentToken.length(); i++) if (!Character.isWhitespace(currentToken.charAt(i))) return true;
+        return false;
     }
 
-    private void setCurrent(@NotNull final String s) {
-        currentToken = new StringBuilder(s);
+    private void setCurrent(final char c) {
+        currentToken.setLength(0);
+        currentToken.append(c);
     }
 
     private void clearCurrent() {
-        setCurrent("");
+        currentToken.setLength(0);
+    }
+
+    private void addToken(@NotNull final String token) {
+        result.add(tokenOf(token));
+        previous = token.length() == 1 ? token.charAt(0) : NO_PREVIOUS;
     }
 
     private void addCurrent() {
         if (currentToken.isEmpty()) return;
-        result.add(currentToken());
-        previous = currentToken.toString();
+        addToken(currentToken.toString());
     }
 
     private boolean addCurrentMultiToken() {
         if (notInComment() && isCurrentNotBlank() && isCurrentMultiToken()) {
             addCurrent();
-            setCurrent("" + atPos);
+            setCurrent(atPos);
             return true;
         }
         return false;
     }
 
-    private boolean doesMultiTokenExist(@NotNull final String multiTok) {
-        return multiSpecial.stream().anyMatch(s -> s.startsWith(multiTok));
+    // whether any multi special token starts with the current token followed by the current character.
+    // multi special tokens only ever consist of special characters, so they can never be keywords
+    private boolean doesMultiTokenExist() {
+        final int length = currentToken.length();
+        for (final String special : multiSpecial) {
+            if (special.length() <= length || special.charAt(length) != atPos) continue;
+            boolean matches = true;
+            for (int i = 0; i < length && matches; i++) matches = special.charAt(i) == currentToken.charAt(i);
+            if (matches) return true;
+        }
+        return false;
     }
 
     private boolean handleSpecialTokens() {
-        if (!Tokenizer.isSpecialToken(atPos + "")) return addCurrentMultiToken();
+        if (!isSpecial(atPos)) return addCurrentMultiToken();
 
-        final String multiTok = currentToken.toString() + atPos;
-        if (handleComments(multiTok)) return true;
+        if (handleComments()) return true;
 
         if (notInComment()) {
-            if (isCurrentMultiToken() && doesMultiTokenExist(multiTok) && !NodeType.of(multiTok).isKeyword()) {
+            if (isCurrentMultiToken() && doesMultiTokenExist()) {
                 currentToken.append(atPos);
                 return true;
             }
             if (isCurrentNotBlank()) addCurrent();
-            setCurrent("" + atPos);
+            setCurrent(atPos);
             return true;
         }
-        previous = "" + atPos;
+        previous = atPos;
         return true;
     }
 
@@ -357,31 +466,23 @@ public class Tokenizer {
         this.line = 1;
         this.currentFile = null;
         this.encounteredError = false;
+        this.unfinishedTextLiteral = false;
         this.beganString = null;
         this.atPos = 0;
         this.currentQuotes = 0;
-        this.currentToken = new StringBuilder();
-        this.previous = null;
+        this.currentToken.setLength(0);
+        this.previous = NO_PREVIOUS;
         this.singleLineCommented = false;
         this.multilineCommented = false;
     }
 
+    // a single pass over the characters of the file; the end of the input is handled by replaying the last character once more
     public List<Token> tokenize(@NotNull final Collection<String> contentList, @NotNull final String code) {
-        result.clear();
-        currentFileContent = new ArrayList<>(contentList);
-        for (int i = 0; i < code.length(); i++) {
-            this.atPos = code.charAt(i);
-
-            for (int j = i + 1; j < code.length() && i + 1 < code.length(); j++) {
-                nextChar = code.charAt(j);
-                if (Character.isWhitespace(nextChar)) continue;
-
-                for (int k = j + 1; k < code.length() && j + 1 < code.length(); k++) {
-                    nextNextChar = code.charAt(k);
-                    if (!Character.isWhitespace(nextNextChar)) break;
-                }
-                break;
-            }
+        result = new ArrayList<>();
+        currentFileContent = contentList instanceof final List<String> list ? list : new ArrayList<>(contentList);
+        final char[] chars = code.toCharArray();
+        for (final char c : chars) {
+            this.atPos = c;
             column++;
             if (encounteredError) {
                 reset();
@@ -393,10 +494,11 @@ public class Tokenizer {
         }
         final boolean quoted = handleQuoted();
         final boolean whitespaces = !quoted && handleWhitespaces();
-        final boolean specials = !whitespaces && !currentToken.toString().equals("\"") && handleSpecialTokens();
+        if (!whitespaces && !isCurrentSingle('"')) handleSpecialTokens();
 
+        final List<Token> tokens = result;
         reset();
-        return result;
+        return tokens;
     }
 
     public boolean encounteredError() {
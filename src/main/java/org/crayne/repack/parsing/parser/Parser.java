@@ -54,8 +54,18 @@ public class Parser {
     }
 
     public void parse(@NotNull final File file, @NotNull final String code, @NotNull final Collection<String> content) {
+        parse(tokenize(file, code, content), content);
+    }
+
+    // lexing and parsing can also be done one after another, e.g. to time them separately
+    @NotNull
+    public List<Token> tokenize(@NotNull final File file, @NotNull final String code, @NotNull final Collection<String> content) {
+        return tokenizer.tokenize(file, content, code);
+    }
+
+    public void parse(@NotNull final List<Token> tokens, @NotNull final Collection<String> content) {
         this.currentFileContent = new ArrayList<>(content);
-        this.tokens = tokenizer.tokenize(file, content, code);
+        this.tokens = tokens;
 
         parse();
     }
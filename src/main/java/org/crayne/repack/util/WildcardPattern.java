@@ -0,0 +1,75 @@
+package org.crayne.repack.util;
+
+import org.jetbrains.annotations.NotNull;
+
+// a glob pattern where '*' matches any sequence of characters and '?' matches exactly one character.
+// matching never allocates and never backtracks further than the last '*', so it takes at most O(n * m) steps
+public class WildcardPattern {
+
+    @NotNull
+    private final String pattern;
+
+    @NotNull
+    private final char[] compiled;
+
+    private final boolean literal;
+
+    private WildcardPattern(@NotNull final String pattern) {
+        this.pattern = pattern;
+        final StringBuilder collapsed = new StringBuilder(pattern.length());
+        for (int i = 0; i < pattern.length(); i++) {
+            final char c = pattern.charAt(i);
+            if (c == '*' && !collapsed.isEmpty() && collapsed.charAt(collapsed.length() - 1) == '*') continue;
+            collapsed.append(c);
+        }
+        this.compiled = collapsed.toString().toCharArray();
+        this.literal = pattern.indexOf('*') == -1 && pattern.indexOf('?') == -1;
+    }
+
+    @NotNull
+    public static WildcardPattern compile(@NotNull final String pattern) {
+        return new WildcardPattern(pattern);
+    }
+
+    @NotNull
+    public String pattern() {
+        return pattern;
+    }
+
+    public boolean literal() {
+        return literal;
+    }
+
+    public boolean matches(@NotNull final CharSequence str) {
+        if (literal) return pattern.contentEquals(str);
+
+        final int length = str.length();
+        int p = 0;
+        int s = 0;
+        int lastStar = -1;
+        int lastStarMatch = 0;
+
+        while (s < length) {
+            if (p < compiled.length && compiled[p] == '*') {
+                lastStar = p++;
+                lastStarMatch = s;
+            } else if (p < compiled.length && (compiled[p] == '?' || compiled[p] == str.charAt(s))) {
+                p++;
+                s++;
+            } else if (lastStar != -1) {
+                p = lastStar + 1;
+                s = ++lastStarMatch;
+            } else {
+                return false;
+            }
+        }
+        while (p < compiled.length && compiled[p] == '*') p++;
+        return p == compiled.length;
+    }
+
+    @NotNull
+    public String toString() {
+        return pattern;
+    }
+
+}
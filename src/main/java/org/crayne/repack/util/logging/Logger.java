@@ -5,7 +5,10 @@ import org.crayne.repack.parsing.lexer.Token;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
 import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.Objects;
@@ -36,6 +39,22 @@ public class Logger extends PrintStream {
         this.format = format;
     }
 
+    // a logger with the same format that writes into the given buffer, so output of concurrent work can be replayed in order
+    @NotNull
+    public Logger buffered(@NotNull final ByteArrayOutputStream buffer) {
+        return redirected(buffer);
+    }
+
+    // a logger with the same format that writes into the given stream instead
+    @NotNull
+    public Logger redirected(@NotNull final OutputStream out) {
+        return new Logger(format, new PrintStream(out, true, StandardCharsets.UTF_8));
+    }
+
+    public void replay(@NotNull final ByteArrayOutputStream buffer) {
+        out.print(buffer.toString(StandardCharsets.UTF_8));
+    }
+
     public void println(@Nullable final Object x) {
         if (x == null) return;
         info(String.valueOf(x));
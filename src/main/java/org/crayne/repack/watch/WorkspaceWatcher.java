@@ -0,0 +1,192 @@
+package org.crayne.repack.watch;
+
+import org.crayne.repack.conversion.PackWorkspace;
+import org.crayne.repack.conversion.output.DirectoryPackOutput;
+import org.crayne.repack.conversion.output.FileCopier;
+import org.crayne.repack.conversion.output.PackOutput;
+import org.crayne.repack.conversion.output.ZipPackOutput;
+import org.crayne.repack.conversion.util.ZipWriter;
+import org.crayne.repack.core.BuildCache;
+import org.crayne.repack.core.CompileOptions;
+import org.crayne.repack.core.CompileProfiler;
+import org.crayne.repack.core.PackWorkspaceBuilder;
+import org.crayne.repack.util.logging.Logger;
+import org.crayne.repack.util.logging.LoggingLevel;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+// keeps the compiler warm and rebuilds the workspace whenever something in it changes. changes are collected until the workspace
+// stayed quiet for a moment and then rebuilt at once: pack files are only parsed again if their content changed (their trees are
+// remembered by the build cache), and only output files whose content changed are written again
+public class WorkspaceWatcher {
+
+    private static final long DEBOUNCE_MILLIS = 200;
+    private static final int SHOWN_CHANGES = 5;
+
+    @NotNull
+    private final Logger logger;
+
+    @NotNull
+    private final Path workspace;
+
+    @NotNull
+    private final File out;
+
+    @NotNull
+    private final CompileOptions options;
+
+    @Nullable
+    private final BuildCache cache;
+
+    @NotNull
+    private final Map<String, String> directoryFingerprints;
+
+    @NotNull
+    private final ZipWriter zipWriter;
+
+    @NotNull
+    private final Map<WatchKey, Path> directories;
+
+    public WorkspaceWatcher(@NotNull final Logger logger, @NotNull final File workspace, @NotNull final File out, @NotNull final CompileOptions options) {
+        this.logger = logger;
+        this.workspace = workspace.toPath().toAbsolutePath().normalize();
+        this.out = out.getAbsoluteFile();
+        this.options = options;
+        this.cache = options.cache() && workspace.isDirectory() ? BuildCache.of(workspace, logger).orElse(null) : null;
+        this.directoryFingerprints = new HashMap<>();
+        this.zipWriter = ZipWriter.retaining(options.compressionLevel(), options.threads());
+        this.directories = new HashMap<>();
+    }
+
+    // builds the workspace once and then again after every batch of changes, until the thread is interrupted.
+    // returns false if the workspace could not be watched at all
+    public boolean watch() {
+        if (!Files.isDirectory(workspace)) {
+            logger.error("Could not find directory: " + workspace);
+            return false;
+        }
+        try (final WatchService service = workspace.getFileSystem().newWatchService()) {
+            register(service, workspace);
+            rebuild(Collections.emptySet());
+            while (!Thread.currentThread().isInterrupted()) {
+                logger.info("Watching workspace '" + workspace + "' for changes...");
+                final Set<Path> changes = nextChanges(service);
+                if (!changes.isEmpty()) rebuild(changes);
+            }
+            return true;
+        } catch (final InterruptedException | ClosedWatchServiceException e) {
+            Thread.currentThread().interrupt();
+            return true;
+        } catch (final IOException e) {
+            logger.error("Could not watch workspace '" + workspace + "': " + e.getMessage());
+            e.printStackTrace(logger);
+            return false;
+        }
+    }
+
+    // the cache folder and the output (if it is inside the workspace) change with every build and are never part of it
+    private boolean ignored(@NotNull final Path path) {
+        final Path absolute = path.toAbsolutePath().normalize();
+        if (cache != null && absolute.startsWith(cache.directory().toPath().toAbsolutePath().normalize())) return true;
+        final String output = out.toPath().normalize().toString();
+        return absolute.startsWith(output) || absolute.toString().equals(output + ".zip") || absolute.toString().equals(output + ".zip.tmp");
+    }
+
+    private void register(@NotNull final WatchService service, @NotNull final Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @NotNull
+            public FileVisitResult preVisitDirectory(@NotNull final Path directory, @NotNull final BasicFileAttributes attributes) throws IOException {
+                if (ignored(directory)) return FileVisitResult.SKIP_SUBTREE;
+                directories.put(directory.register(service, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), directory);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    // waits for the next change and then collects every further change until none came in for DEBOUNCE_MILLIS
+    @NotNull
+    private Set<Path> nextChanges(@NotNull final WatchService service) throws InterruptedException, IOException {
+        final Set<Path> changes = new TreeSet<>();
+        WatchKey key = service.take();
+        while (key != null) {
+            final Path directory = directories.get(key);
+            for (final WatchEvent<?> event : key.pollEvents()) {
+                if (directory == null) continue;
+                if (event.kind() == OVERFLOW) {
+                    changes.add(directory);
+                    continue;
+                }
+                final Path path = directory.resolve((Path) event.context());
+                if (ignored(path)) continue;
+                if (event.kind() == ENTRY_CREATE && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) register(service, path);
+                changes.add(path);
+            }
+            if (!key.reset()) directories.remove(key);
+            key = service.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        return changes;
+    }
+
+    @NotNull
+    private PackOutput output() throws IOException {
+        return switch (options.output()) {
+            case ZIP -> new ZipPackOutput(new File(out.getPath() + ".zip"), zipWriter);
+            case DIRECTORY -> new DirectoryPackOutput(out, directoryFingerprints, new FileCopier(options.copy()));
+        };
+    }
+
+    private void rebuild(@NotNull final Set<Path> changes) {
+        if (!changes.isEmpty()) {
+            final StringJoiner shown = new StringJoiner(", ");
+            changes.stream().limit(SHOWN_CHANGES).map(p -> workspace.relativize(p.toAbsolutePath().normalize()).toString()).forEach(shown::add);
+            logger.info(">>> " + changes.size() + " change" + (changes.size() == 1 ? "" : "s") + " in workspace (" + shown
+                    + (changes.size() > SHOWN_CHANGES ? ", ..." : "") + "), rebuilding...");
+        }
+        if (options.profiler().enabled()) options.profiler(new CompileProfiler());
+
+        final long startedNanos = System.nanoTime();
+        final PackWorkspaceBuilder builder = cache == null
+                ? new PackWorkspaceBuilder(logger, options)
+                : new PackWorkspaceBuilder(logger, options, cache);
+
+        final Optional<PackWorkspace> packWorkspace = builder.setup(workspace.toFile());
+        PackOutput output = null;
+        boolean success = false;
+        if (packWorkspace.isPresent()) {
+            try {
+                output = output();
+                success = packWorkspace.get().compile(output);
+            } catch (final IOException e) {
+                logger.error("Could not create new pack output '" + out.getAbsolutePath() + "': " + e.getMessage());
+                e.printStackTrace(logger);
+            }
+        }
+        final long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedNanos);
+
+        if (options.profiler().enabled()) options.profiler().printTable(logger);
+        if (!success) {
+            logger.error("Rebuild failed after " + millis + "ms; waiting for the next change.");
+            return;
+        }
+        final int packFiles = packWorkspace.get().packFiles().size();
+        final int parsed = cache == null ? packFiles : packFiles - cache.loaded();
+        logger.log("Rebuilt workspace in " + millis + "ms (parsed " + parsed + " of " + packFiles + " pack files, " + describe(output) + ").", LoggingLevel.SUCCESS);
+    }
+
+    @NotNull
+    private String describe(@Nullable final PackOutput output) {
+        if (output instanceof final DirectoryPackOutput directory)
+            return "wrote " + (directory.written() - directory.unchanged()) + " of " + directory.written() + " output files";
+        return "reused " + zipWriter.reused() + " of " + zipWriter.written() + " compressed zip entries";
+    }
+
+}
@@ -0,0 +1,85 @@
+package org.crayne.repack.conversion;
+
+import org.crayne.repack.core.CompileOptions;
+import org.crayne.repack.core.PackWorkspaceBuilder;
+import org.crayne.repack.util.logging.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PackWorkspaceTest {
+
+    private static final int PACK_FILES = 8;
+
+    @TempDir
+    Path temp;
+
+    // every pack file copies its own texture to the same destination, and matches a sword to it
+    @NotNull
+    private Path workspace() throws IOException {
+        final Path workspace = Files.createDirectories(temp.resolve("workspace"));
+        Files.createDirectories(workspace.resolve("textures"));
+        Files.writeString(workspace.resolve("pack.rep"), "global pack_version = \"1.19.2\"\n");
+        for (int i = 0; i < PACK_FILES; i++) {
+            Files.writeString(workspace.resolve("textures/texture" + i + ".png"), "texture " + i);
+            Files.writeString(workspace.resolve("pack" + i + ".rep"), """
+                    match {
+                        display.Name = "ipattern:*sword %1$d*"
+                    } for {
+                        items {
+                            *_sword = "textures/texture%1$d"
+                        }
+                    }
+
+                    copy {
+                        "textures/texture%1$d.png" => "assets/minecraft/textures/shared.png"
+                    }
+                    """.formatted(i));
+        }
+        return workspace;
+    }
+
+    @NotNull
+    private byte[] compile(@NotNull final Path workspace, final int threads) throws IOException {
+        final Logger logger = new Logger("%m%", new PrintStream(OutputStream.nullOutputStream()));
+        final CompileOptions options = new CompileOptions().threads(threads).cache(false).force(true);
+        final PackWorkspace packWorkspace = new PackWorkspaceBuilder(logger, options).setup(workspace.toFile()).orElseThrow();
+
+        final File out = temp.resolve("out-" + threads).toFile();
+        assertTrue(packWorkspace.compile(out));
+        return Files.readAllBytes(new File(out.getPath() + ".zip").toPath());
+    }
+
+    @Test
+    void sameZipForAnyThreadCount() throws IOException {
+        final Path workspace = workspace();
+        final byte[] single = compile(workspace, 1);
+        for (final int threads : new int[] {2, 3, 4, 8}) {
+            assertArrayEquals(single, compile(workspace, threads), "--threads=" + threads + " differs from --threads=1");
+        }
+    }
+
+    @Test
+    void firstCopyInPathOrderClaimsTheDestination() throws IOException {
+        final Path workspace = workspace();
+        compile(workspace, 4);
+        try (final ZipFile zip = new ZipFile(temp.resolve("out-4.zip").toFile())) {
+            final ZipEntry shared = zip.getEntry("assets/minecraft/textures/shared.png");
+            assertNotNull(shared);
+            assertEquals("texture 0", new String(zip.getInputStream(shared).readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+}
@@ -0,0 +1,56 @@
+package org.crayne.repack.conversion.output;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SyncPackOutputTest {
+
+    private static final int FILES = 400;
+
+    @TempDir
+    Path temp;
+
+    private void sync(@NotNull final File root, final int round) throws IOException {
+        final SyncPackOutput output = new SyncPackOutput(root, new FileCopier(CopyStrategy.COPY), 4);
+        // every other file changes each round, so there is an old tree to delete every time
+        for (int i = 0; i < FILES; i++) {
+            output.write("assets/file" + i + ".txt", ("file " + i + (i % 2 == 0 ? " round " + round : "")).getBytes(StandardCharsets.UTF_8));
+        }
+        output.finish();
+    }
+
+    private static void assertSynced(@NotNull final File root, final int round) throws IOException {
+        for (int i = 0; i < FILES; i++) {
+            final Path file = root.toPath().resolve("assets/file" + i + ".txt");
+            assertEquals("file " + i + (i % 2 == 0 ? " round " + round : ""), Files.readString(file), file.toString());
+        }
+    }
+
+    // syncing another output in between must not let the first one skip waiting for its own cleanup
+    @Test
+    void alternatingOutputsWaitForTheirOwnCleanup() throws IOException {
+        final File a = temp.resolve("a").toFile();
+        final File b = temp.resolve("b").toFile();
+        for (int round = 0; round < 10; round++) {
+            sync(a, round);
+            sync(b, round);
+            sync(new File(temp.toFile(), "b/../a"), round + 100);
+            assertSynced(a, round + 100);
+            assertSynced(b, round);
+        }
+        assertFalse(Files.exists(temp.resolve("a" + SyncPackOutput.STAGING)));
+        SyncPackOutput.awaitCleanups();
+        assertFalse(Files.exists(temp.resolve("a" + SyncPackOutput.RETIRED)));
+        assertFalse(Files.exists(temp.resolve("b" + SyncPackOutput.RETIRED)));
+    }
+
+}
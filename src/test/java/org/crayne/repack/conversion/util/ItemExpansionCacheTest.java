@@ -0,0 +1,45 @@
+package org.crayne.repack.conversion.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ItemExpansionCacheTest {
+
+    @Test
+    void countsHitsAndMisses() {
+        final ItemExpansionCache items = ItemExpansionCache.forCompile();
+        final ItemSet swords = items.expand("*_sword");
+        assertTrue(swords.names().contains("diamond_sword"), swords::toString);
+        // the same key after normalization
+        assertSame(swords, items.expand("minecraft:**_SWORD"));
+        items.expand("*_helmet");
+
+        assertEquals(1, items.hits());
+        assertEquals(2, items.misses());
+        assertEquals(2, items.size());
+    }
+
+    @Test
+    void moddedItemsStayInTheirCompile() {
+        final ItemRegistry vanilla = ItemRegistry.vanilla();
+        final ItemExpansionCache first = ItemExpansionCache.forCompile();
+        final ItemExpansionCache second = ItemExpansionCache.forCompile();
+
+        final ItemSet modded = first.expand("mymod:ruby_leggings");
+        assertEquals(List.of("mymod:ruby_leggings"), modded.names());
+        assertEquals(modded, modded.leggings());
+        assertEquals(List.of("othermod:gear"), second.expand("othermod:gear").names());
+
+        // both compiles handed out the first modded id, and the registry of the jvm never saw either item
+        assertEquals(vanilla.size(), first.registry().intern("mymod:ruby_leggings"));
+        assertEquals(vanilla.size(), second.registry().intern("othermod:gear"));
+        assertTrue(second.expand("mymod:ruby_leggings").leggings().names().contains("mymod:ruby_leggings"));
+        assertTrue(vanilla.leggings().length() <= vanilla.size());
+        assertNotSame(vanilla, first.registry());
+        assertEquals(vanilla.fingerprint(), first.registry().fingerprint());
+    }
+
+}
@@ -0,0 +1,76 @@
+package org.crayne.repack.conversion.util;
+
+import org.crayne.repack.core.WorkspaceIndex;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TextureDeduplicatorTest {
+
+    @TempDir
+    Path workspace;
+
+    @NotNull
+    private Path texture(@NotNull final String name, @NotNull final String content) throws IOException {
+        final Path path = workspace.resolve(name);
+        Files.createDirectories(path.getParent());
+        return Files.writeString(path, content);
+    }
+
+    @Test
+    void onlyTexturesSharingTheirSizeAreHashed() throws IOException {
+        final Path a = texture("a.png", "same");
+        final Path b = texture("b.png", "same");
+        final Path c = texture("c.png", "diff");
+        final Path d = texture("d.png", "a size of its own");
+        final WorkspaceIndex index = new WorkspaceIndex();
+        index.walk(workspace.toFile());
+
+        final TextureDeduplicator textures = new TextureDeduplicator(2);
+        textures.deduplicate(List.of(d, c, b, a, a), index);
+
+        assertEquals(3, textures.hashed());
+        assertEquals(3, textures.unique());
+        assertEquals(1, textures.duplicates());
+        assertEquals("a.png", textures.name(a).orElseThrow());
+        assertEquals("a.png", textures.name(b).orElseThrow());
+        assertEquals("c.png", textures.name(c).orElseThrow());
+        assertEquals("d.png", textures.name(d).orElseThrow());
+    }
+
+    @Test
+    void differentContentWithTheSameNameGetsNumbered() throws IOException {
+        final Path first = texture("one/sword.png", "first");
+        final Path second = texture("two/sword.png", "second content");
+        final Path copy = texture("two/sword_copy.png", "first");
+        final WorkspaceIndex index = new WorkspaceIndex();
+        index.walk(workspace.toFile());
+
+        final TextureDeduplicator textures = new TextureDeduplicator(1);
+        textures.deduplicate(List.of(second, copy, first), index);
+
+        assertEquals(2, textures.hashed());
+        assertEquals("sword.png", textures.name(first).orElseThrow());
+        assertEquals("sword.png", textures.name(copy).orElseThrow());
+        assertEquals("sword1.png", textures.name(second).orElseThrow());
+    }
+
+    @Test
+    void texturesOutsideTheIndexAreMeasured() throws IOException {
+        final Path a = texture("a.png", "same");
+        final Path b = texture("b.png", "same");
+
+        final TextureDeduplicator textures = new TextureDeduplicator(1);
+        textures.deduplicate(List.of(a, b), new WorkspaceIndex());
+        assertEquals(1, textures.unique());
+        assertEquals(2, textures.hashed());
+    }
+
+}
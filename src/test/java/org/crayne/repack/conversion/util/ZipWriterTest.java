@@ -0,0 +1,161 @@
+package org.crayne.repack.conversion.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ZipWriterTest {
+
+    @TempDir
+    Path temp;
+
+    @NotNull
+    private static byte[] text(final int i) {
+        return ("{\n  \"parent\": \"item/generated\",\n  \"textures\": {\n    \"layer0\": \"item/texture_" + i + "\"\n  }\n}\n").repeat(4)
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    @NotNull
+    private static List<ZipWriter.Source> sources() {
+        final Random random = new Random(0x21b);
+        final List<ZipWriter.Source> sources = new ArrayList<>();
+        // added out of order on purpose, the archive is sorted by name anyway
+        for (int i = 40; i >= 0; i--) {
+            final byte[] png = new byte[200 + i];
+            random.nextBytes(png);
+            sources.add(ZipWriter.Source.of("assets/minecraft/textures/item/texture_" + i + ".png", png));
+            sources.add(ZipWriter.Source.of("assets/minecraft/models/item/model_" + i + ".json", text(i)));
+        }
+        final byte[] noise = new byte[300];
+        random.nextBytes(noise);
+        sources.add(ZipWriter.Source.of("noise.txt", noise));
+        sources.add(ZipWriter.Source.of("empty.txt", new byte[0]));
+        return sources;
+    }
+
+    @NotNull
+    private static byte[] write(@NotNull final ZipWriter writer, @NotNull final List<ZipWriter.Source> sources) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.write(sources, out);
+        return out.toByteArray();
+    }
+
+    @NotNull
+    private ZipFile read(@NotNull final byte[] archive) throws IOException {
+        return new ZipFile(Files.write(Files.createTempFile(temp, "archive", ".zip"), archive).toFile());
+    }
+
+    @Test
+    void pngIsStoredAndTextIsDeflated() throws IOException {
+        final List<ZipWriter.Source> sources = sources();
+        try (final ZipFile zip = read(write(new ZipWriter(Deflater.DEFAULT_COMPRESSION, 4), sources))) {
+            assertEquals(sources.size(), zip.size());
+            for (final ZipWriter.Source source : sources) {
+                final ZipEntry entry = zip.getEntry(source.name());
+                assertNotNull(entry, source.name());
+                assertArrayEquals(source.read(), zip.getInputStream(entry).readAllBytes(), source.name());
+
+                final boolean stored = ZipWriter.alreadyCompressed(source.name()) || source.name().equals("noise.txt") || source.name().equals("empty.txt");
+                assertEquals(stored ? ZipEntry.STORED : ZipEntry.DEFLATED, entry.getMethod(), source.name());
+            }
+            // sorted by name
+            final List<String> names = zip.stream().map(ZipEntry::getName).toList();
+            assertEquals(names.stream().sorted().toList(), names);
+        }
+    }
+
+    @Test
+    void levelZeroStoresEverything() throws IOException {
+        try (final ZipFile zip = read(write(new ZipWriter(0, 2), sources()))) {
+            assertTrue(zip.stream().allMatch(entry -> entry.getMethod() == ZipEntry.STORED));
+        }
+    }
+
+    @Test
+    void sameBytesForAnyThreadCount() throws IOException {
+        final List<ZipWriter.Source> sources = sources();
+        final byte[] single = write(new ZipWriter(Deflater.DEFAULT_COMPRESSION, 1), sources);
+        assertArrayEquals(single, write(new ZipWriter(Deflater.DEFAULT_COMPRESSION, 1), sources));
+        for (final int threads : new int[] {2, 3, 4, 8, 32}) {
+            final ZipWriter writer = new ZipWriter(Deflater.DEFAULT_COMPRESSION, threads);
+            assertArrayEquals(single, write(writer, sources), "threads = " + threads);
+            assertArrayEquals(single, write(writer, sources), "second write, threads = " + threads);
+        }
+        final ZipWriter retaining = ZipWriter.retaining(Deflater.DEFAULT_COMPRESSION, 4);
+        assertArrayEquals(single, write(retaining, sources));
+        assertArrayEquals(single, write(retaining, sources));
+    }
+
+    @Test
+    void retainingWriterOnlyKeepsDeflatedEntries() throws IOException {
+        final List<ZipWriter.Source> sources = sources();
+        final ZipWriter writer = ZipWriter.retaining(Deflater.DEFAULT_COMPRESSION, 4);
+        final byte[] first = write(writer, sources);
+        assertEquals(0, writer.reused());
+
+        final int deflated;
+        try (final ZipFile zip = read(first)) {
+            deflated = (int) zip.stream().filter(entry -> entry.getMethod() == ZipEntry.DEFLATED).count();
+        }
+        assertArrayEquals(first, write(writer, sources));
+        assertEquals(deflated, writer.reused());
+        assertEquals(sources.size(), writer.written());
+
+        // a changed entry is compressed again, everything else is still reused
+        sources.set(sources.size() - 3, ZipWriter.Source.of(sources.get(sources.size() - 3).name(), text(1000)));
+        write(writer, sources);
+        assertEquals(deflated - 1, writer.reused());
+    }
+
+    @Test
+    void duplicateNamesAreRejected() {
+        final List<ZipWriter.Source> sources = sources();
+        sources.add(ZipWriter.Source.of("empty.txt", new byte[] {1}));
+        for (final int threads : new int[] {1, 4}) {
+            final IOException e = assertThrows(IOException.class, () -> new ZipWriter(6, threads).write(sources, OutputStream.nullOutputStream()));
+            assertTrue(e.getMessage().contains("empty.txt"), e.getMessage());
+        }
+    }
+
+    @Test
+    void manyEntriesUseZip64() throws IOException {
+        final int count = 0xFFFF + 1000;
+        final List<ZipWriter.Source> sources = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) sources.add(ZipWriter.Source.of("entries/entry_" + i + ".txt", ("entry " + i).getBytes(StandardCharsets.UTF_8)));
+        final byte[] archive = write(new ZipWriter(6, 4), sources);
+
+        // the end of central directory record only says that the real values are in the zip64 records
+        final ByteBuffer bytes = ByteBuffer.wrap(archive).order(ByteOrder.LITTLE_ENDIAN);
+        final int end = archive.length - 22;
+        assertEquals(0x06054b50, bytes.getInt(end));
+        assertEquals((short) 0xFFFF, bytes.getShort(end + 10));
+        assertEquals(0x07064b50, bytes.getInt(end - 20));
+
+        try (final ZipFile zip = read(archive)) {
+            assertEquals(count, zip.size());
+            for (final int i : new int[] {0, 1, 0xFFFE, 0xFFFF, 0x10000, count - 1}) {
+                final ZipEntry entry = zip.getEntry("entries/entry_" + i + ".txt");
+                assertNotNull(entry, "entry " + i);
+                assertEquals("entry " + i, new String(zip.getInputStream(entry).readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+}
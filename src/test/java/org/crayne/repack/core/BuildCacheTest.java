@@ -0,0 +1,177 @@
+package org.crayne.repack.core;
+
+import org.crayne.repack.conversion.PackWorkspace;
+import org.crayne.repack.parsing.ast.Node;
+import org.crayne.repack.parsing.ast.NodeType;
+import org.crayne.repack.parsing.lexer.Token;
+import org.crayne.repack.util.logging.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BuildCacheTest {
+
+    private static final String CODE = """
+            global pack_version = "1.19.2"
+            let name = "sword"
+
+            match {
+                display.Name = "ipattern:*$(name)*"
+            } for {
+                items {
+                    *_sword = "textures/sword"
+                }
+            }
+            """;
+
+    @TempDir
+    Path workspace;
+
+    @NotNull
+    private final ByteArrayOutputStream log = new ByteArrayOutputStream();
+
+    @NotNull
+    private Logger logger() {
+        return new Logger("%m%", new PrintStream(log, true));
+    }
+
+    @NotNull
+    private BuildCache cache() {
+        return BuildCache.of(workspace.toFile(), logger()).orElseThrow();
+    }
+
+    @NotNull
+    private File packFile() {
+        return workspace.resolve("pack.rep").toFile();
+    }
+
+    @NotNull
+    private static Node tree(@NotNull final File packFile) {
+        final NodeType[] types = NodeType.values();
+        final Node root = new Node(types[0]);
+        final Node first = new Node(types[1], new Token("first", 1, 4, packFile));
+        first.addChildren(new Node(types[2], new Token("\"ünïcödé\"", 2, 8, packFile)), new Node(types[3], new Token("first", 3, 0, null)));
+        root.addChildren(first, new Node(types[4]));
+        return root;
+    }
+
+    private static void assertSameTree(@NotNull final Node expected, @NotNull final Node actual) {
+        assertEquals(expected.type(), actual.type());
+        assertEquals(expected.value() == null, actual.value() == null);
+        if (expected.value() != null) {
+            assertEquals(expected.value().token(), actual.value().token());
+            assertEquals(expected.value().line(), actual.value().line());
+            assertEquals(expected.value().column(), actual.value().column());
+            assertEquals(expected.value().file(), actual.value().file());
+        }
+        assertEquals(expected.children().size(), actual.children().size());
+        for (int i = 0; i < expected.children().size(); i++) assertSameTree(expected.children().get(i), actual.children().get(i));
+    }
+
+    // the only entry of the cache folder
+    @NotNull
+    private Path entry() throws IOException {
+        try (final var entries = Files.list(workspace.resolve(BuildCache.DIRECTORY))) {
+            final Path[] all = entries.toArray(Path[]::new);
+            assertEquals(1, all.length, Arrays.toString(all));
+            return all[0];
+        }
+    }
+
+    @Test
+    void roundTrip() {
+        final File packFile = packFile();
+        final BuildCache writer = cache();
+        final String hash = writer.hash(CODE);
+        writer.store(hash, packFile, tree(packFile));
+
+        // a new cache does not remember anything in memory, so this reads the entry back from disk
+        final BuildCache reader = cache();
+        final Optional<Node> loaded = reader.load(hash, packFile);
+        assertTrue(loaded.isPresent(), log::toString);
+        assertSameTree(tree(packFile), loaded.get());
+        assertEquals(1, reader.loaded());
+        assertTrue(reader.load(reader.hash(CODE + " "), packFile).isEmpty());
+    }
+
+    private void assertDiscarded(@NotNull final String hash, @NotNull final Path entry) {
+        final BuildCache reader = cache();
+        assertTrue(reader.load(hash, packFile()).isEmpty());
+        assertFalse(Files.exists(entry), "the corrupted entry was not deleted");
+        assertTrue(log.toString().contains("Discarding corrupted build cache entry"), log::toString);
+    }
+
+    @Test
+    void truncatedEntryIsDeleted() throws IOException {
+        final BuildCache writer = cache();
+        final String hash = writer.hash(CODE);
+        writer.store(hash, packFile(), tree(packFile()));
+
+        final Path entry = entry();
+        final byte[] bytes = Files.readAllBytes(entry);
+        Files.write(entry, Arrays.copyOf(bytes, bytes.length - 5));
+        assertDiscarded(hash, entry);
+    }
+
+    @Test
+    void checksumMismatchIsDeleted() throws IOException {
+        final BuildCache writer = cache();
+        final String hash = writer.hash(CODE);
+        writer.store(hash, packFile(), tree(packFile()));
+
+        // the last byte of the body, right before the checksum
+        final Path entry = entry();
+        final byte[] bytes = Files.readAllBytes(entry);
+        bytes[bytes.length - 9] ^= 0x5a;
+        Files.write(entry, bytes);
+        assertDiscarded(hash, entry);
+        assertTrue(log.toString().contains("checksum mismatch"), log::toString);
+    }
+
+    @NotNull
+    private Optional<PackWorkspace> setup() {
+        final CompileOptions options = new CompileOptions().cache(true);
+        return new PackWorkspaceBuilder(logger(), options).setup(workspace.toFile());
+    }
+
+    @Test
+    void corruptedEntryIsParsedAgain() throws IOException {
+        Files.writeString(workspace.resolve("pack.rep"), CODE);
+        Files.createDirectories(workspace.resolve("textures"));
+        Files.writeString(workspace.resolve("textures/sword.png"), "sword");
+
+        final Optional<PackWorkspace> first = setup();
+        assertTrue(first.isPresent(), log::toString);
+        final Path entry = entry();
+        final byte[] valid = Files.readAllBytes(entry);
+
+        final byte[] corrupted = valid.clone();
+        corrupted[corrupted.length - 9] ^= 0x5a;
+        Files.write(entry, corrupted);
+        log.reset();
+
+        final Optional<PackWorkspace> second = setup();
+        assertTrue(second.isPresent(), log::toString);
+        assertTrue(log.toString().contains("Discarding corrupted build cache entry"), log::toString);
+        assertTrue(log.toString().contains("Successfully parsed pack file"), log::toString);
+        assertEquals(first.get().packFiles().iterator().next().matches().size(), second.get().packFiles().iterator().next().matches().size());
+
+        // parsing again wrote a valid entry in place of the corrupted one
+        assertArrayEquals(valid, Files.readAllBytes(entry()));
+        log.reset();
+        assertTrue(setup().isPresent());
+        assertTrue(log.toString().contains("from the build cache"), log::toString);
+    }
+
+}
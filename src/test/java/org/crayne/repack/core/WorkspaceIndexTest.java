@@ -0,0 +1,63 @@
+package org.crayne.repack.core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WorkspaceIndexTest {
+
+    @TempDir
+    Path workspace;
+
+    @Test
+    void findsWalkedFilesExactly() throws IOException {
+        Files.createDirectories(workspace.resolve("textures"));
+        Files.writeString(workspace.resolve("textures/sword.png"), "sword");
+
+        final WorkspaceIndex index = new WorkspaceIndex();
+        assertEquals(1, index.walk(workspace.toFile()).size());
+
+        assertTrue(index.isFile(workspace.resolve("textures/sword.png").toFile()));
+        assertTrue(index.isFile(workspace.resolve("textures/../textures/./sword.png").toFile()));
+        assertFalse(index.isFile(workspace.resolve("textures/sword").toFile()));
+        assertFalse(index.isFile(workspace.resolve("textures/shield.png").toFile()));
+        assertFalse(index.isFile(workspace.resolve("textures").toFile()));
+        assertEquals(5, index.find(workspace.resolve("textures/sword.png").toFile()).orElseThrow().size());
+    }
+
+    // a reference in a different case is found exactly when the file system finds it, e.g. on windows and macos
+    @Test
+    void agreesWithTheFileSystemOnCase() throws IOException {
+        Files.createDirectories(workspace.resolve("Textures"));
+        Files.writeString(workspace.resolve("Textures/Sword.png"), "sword");
+
+        final WorkspaceIndex index = new WorkspaceIndex();
+        index.walk(workspace.toFile());
+
+        for (final String reference : new String[] {"textures/sword.png", "Textures/sword.png", "TEXTURES/SWORD.PNG", "Textures/Sword.png"}) {
+            final Path path = workspace.resolve(reference);
+            assertEquals(Files.isRegularFile(path), index.isFile(path.toFile()), reference);
+        }
+    }
+
+    @Test
+    void asksTheFileSystemWhenOnlyTheCaseDiffers() throws IOException {
+        Files.createDirectories(workspace.resolve("textures"));
+        Files.writeString(workspace.resolve("textures/Sword.png"), "sword");
+
+        final WorkspaceIndex index = new WorkspaceIndex();
+        index.walk(workspace.toFile());
+
+        // written after the walk, so only a real lookup can find it
+        Files.writeString(workspace.resolve("textures/sword.png"), "sword");
+        Files.writeString(workspace.resolve("textures/shield.png"), "shield");
+        assertTrue(index.isFile(workspace.resolve("textures/sword.png").toFile()));
+        assertFalse(index.isFile(workspace.resolve("textures/shield.png").toFile()));
+    }
+
+}
@@ -0,0 +1,101 @@
+package org.crayne.repack.daemon;
+
+import org.crayne.repack.core.BuildCache;
+import org.crayne.repack.util.logging.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.*;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompileDaemonTest {
+
+    private static final long TIMEOUT_MILLIS = 300;
+
+    @TempDir
+    Path temp;
+
+    @NotNull
+    private final ByteArrayOutputStream log = new ByteArrayOutputStream();
+
+    @NotNull
+    private Path socket() {
+        return temp.resolve("repack").resolve("daemon.sock");
+    }
+
+    @NotNull
+    private CompletableFuture<Boolean> start() throws InterruptedException {
+        final Logger logger = new Logger("%m%", new PrintStream(log, true));
+        final CompileDaemon daemon = new CompileDaemon(logger, socket(), TIMEOUT_MILLIS);
+        final CompletableFuture<Boolean> running = CompletableFuture.supplyAsync(daemon::run);
+        // the socket file shows up right before the daemon listens on it, so wait for the daemon to say it does
+        for (int i = 0; i < 500 && !log.toString().contains("Compile daemon listening"); i++) Thread.sleep(10);
+        assertTrue(Files.exists(socket()), log::toString);
+        return running;
+    }
+
+    @NotNull
+    private SocketChannel connect() throws IOException {
+        return SocketChannel.open(UnixDomainSocketAddress.of(socket()));
+    }
+
+    private static void request(@NotNull final SocketChannel client, final byte request, final int count) throws IOException {
+        final DataOutputStream out = new DataOutputStream(Channels.newOutputStream(client));
+        out.writeInt(CompileDaemon.PROTOCOL);
+        out.writeUTF(BuildCache.compilerKey());
+        out.writeByte(request);
+        out.writeInt(count);
+        out.flush();
+    }
+
+    private void stop(@NotNull final CompletableFuture<Boolean> running) throws Exception {
+        try (final SocketChannel client = connect()) {
+            request(client, CompileDaemon.STOP, 0);
+            final DataInputStream in = new DataInputStream(Channels.newInputStream(client));
+            assertEquals(CompileDaemon.EXIT, in.readByte());
+            assertEquals(0, in.readInt());
+        }
+        assertTrue(running.get(5, TimeUnit.SECONDS), log::toString);
+    }
+
+    @Test
+    void stalledClientIsDisconnected() {
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            final CompletableFuture<Boolean> running = start();
+            try (final SocketChannel stalled = connect()) {
+                // sends only half of its request and then nothing at all
+                new DataOutputStream(Channels.newOutputStream(stalled)).writeShort(0);
+                stop(running);
+                assertEquals(-1, Channels.newInputStream(stalled).read());
+            }
+            assertTrue(log.toString().contains("Disconnected a client that stalled"), log::toString);
+        });
+    }
+
+    @Test
+    void invalidArgumentCountIsRejected() {
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            final CompletableFuture<Boolean> running = start();
+            for (final int count : new int[] {-1, CompileDaemon.MAX_ARGUMENTS + 1, Integer.MAX_VALUE}) {
+                try (final SocketChannel client = connect()) {
+                    request(client, CompileDaemon.COMPILE, count);
+                    assertEquals(-1, Channels.newInputStream(client).read());
+                }
+            }
+            stop(running);
+            assertTrue(log.toString().contains("argument count " + Integer.MAX_VALUE), log::toString);
+            assertFalse(log.toString().contains("OutOfMemoryError"), log::toString);
+        });
+    }
+
+}
@@ -0,0 +1,69 @@
+package org.crayne.repack.generator;
+
+import org.crayne.repack.util.logging.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WorkspaceGeneratorTest {
+
+    private static final int TEXTURES = 500;
+
+    @TempDir
+    Path temp;
+
+    @NotNull
+    private Path generate(@NotNull final String name, final long seed) {
+        final Logger logger = new Logger("%m%", new PrintStream(OutputStream.nullOutputStream()));
+        final Path out = temp.resolve(name);
+        assertTrue(new WorkspaceGenerator(logger, new GeneratorOptions().seed(seed).textures(TEXTURES)).generate(out.toFile()));
+        return out;
+    }
+
+    @NotNull
+    private static byte[] texture(@NotNull final Path workspace, final int texture) throws IOException {
+        return Files.readAllBytes(workspace.resolve(WorkspaceGenerator.textureName(texture) + ".png"));
+    }
+
+    @Test
+    void texturesAreValidPngsOfTheSameSizeWithDifferentContent() throws IOException {
+        final Path workspace = generate("workspace", 42);
+        final Set<Integer> pixels = new HashSet<>();
+        final int size = texture(workspace, 0).length;
+        for (int texture = 0; texture < TEXTURES; texture++) {
+            assertEquals(size, texture(workspace, texture).length);
+            final File file = workspace.resolve(WorkspaceGenerator.textureName(texture) + ".png").toFile();
+            final BufferedImage image = ImageIO.read(file);
+            assertNotNull(image, file.getName());
+            assertEquals(1, image.getWidth());
+            assertEquals(1, image.getHeight());
+            assertTrue(pixels.add(image.getRGB(0, 0)), "texture " + texture + " repeats the pixel of another one");
+        }
+    }
+
+    @Test
+    void sameSeedGeneratesTheSameTextures() throws IOException {
+        final Path first = generate("first", 7);
+        final Path second = generate("second", 7);
+        final Path other = generate("other", 8);
+        for (int texture = 0; texture < TEXTURES; texture++) {
+            assertArrayEquals(texture(first, texture), texture(second, texture));
+        }
+        assertFalse(Arrays.equals(texture(first, 0), texture(other, 0)));
+    }
+
+}
@@ -0,0 +1,132 @@
+package org.crayne.repack.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WildcardPatternTest {
+
+    // the recursive matcher StringUtil used before WildcardPattern, kept to compare against
+    private static boolean oldMatchPattern(@NotNull final String pattern, @NotNull final String str) {
+        if (pattern.length() == 0 && str.length() == 0) return true;
+        if (pattern.length() > 1 && pattern.charAt(0) == '*' && str.length() == 0) return false;
+
+        if ((pattern.length() > 1 && pattern.charAt(0) == '?')
+                || (pattern.length() != 0 && str.length() != 0 && pattern.charAt(0) == str.charAt(0)))
+            return oldMatchPattern(pattern.substring(1), str.substring(1));
+
+        if (pattern.length() > 0 && pattern.charAt(0) == '*')
+            return oldMatchPattern(pattern.substring(1), str) || oldMatchPattern(pattern, str.substring(1));
+        return false;
+    }
+
+    private static boolean matches(@NotNull final String pattern, @NotNull final String str) {
+        return WildcardPattern.compile(pattern).matches(str);
+    }
+
+    @NotNull
+    private static String repeat(final char c, final int times) {
+        return String.valueOf(c).repeat(times);
+    }
+
+    @Test
+    void pathologicalPatternsFinishQuickly() {
+        final String as = repeat('a', 5000);
+        assertTimeoutPreemptively(Duration.ofSeconds(1), () -> {
+            assertFalse(matches("*a*a*a*a*b", as));
+            assertFalse(matches("*a*a*a*a*a*a*a*a*b", as));
+            assertTrue(matches("*a*a*a*a*a*a*a*a*a", as));
+            assertFalse(matches(repeat('?', 30) + "*b", as));
+            assertTrue(matches("*a*a*a*a*b", as + "b"));
+            assertFalse(matches("a*" + repeat('a', 100) + "*b*", as));
+        });
+    }
+
+    @Test
+    void questionMarkMatchesExactlyOneCharacter() {
+        assertTrue(matches("?", "a"));
+        assertFalse(matches("?", ""));
+        assertFalse(matches("?", "ab"));
+        assertTrue(matches("d?amond_sword", "diamond_sword"));
+        assertFalse(matches("d?amond_sword", "damond_sword"));
+        assertTrue(matches("*_?word", "diamond_sword"));
+        assertTrue(matches("??*", "ab"));
+        assertFalse(matches("??*", "a"));
+        // a trailing '?' is a wildcard as well; the old matcher compared it literally
+        assertTrue(matches("iron_?", "iron_x"));
+        assertFalse(oldMatchPattern("iron_?", "iron_x"));
+    }
+
+    @Test
+    void repeatedStarsCollapse() {
+        assertEquals(matches("*", "diamond_sword"), matches("***", "diamond_sword"));
+        assertTrue(matches("**_sword", "diamond_sword"));
+        assertTrue(matches("diamond**sword", "diamond_sword"));
+        assertTrue(matches("diamond_sword***", "diamond_sword"));
+        assertTrue(matches("***", ""));
+        assertFalse(matches("**a**", ""));
+        assertFalse(WildcardPattern.compile("**").literal());
+        // the old matcher could not match the end of the string with more than one star left
+        assertTrue(matches("diamond**", "diamond"));
+        assertFalse(oldMatchPattern("diamond**", "diamond"));
+    }
+
+    @Test
+    void literalPatternsCompareExactly() {
+        final WildcardPattern pattern = WildcardPattern.compile("diamond_sword");
+        assertTrue(pattern.literal());
+        assertTrue(pattern.matches("diamond_sword"));
+        assertTrue(pattern.matches(new StringBuilder("diamond_sword")));
+        assertFalse(pattern.matches("diamond_swords"));
+        assertFalse(pattern.matches("Diamond_sword"));
+        assertFalse(pattern.matches(""));
+        assertTrue(WildcardPattern.compile("").matches(""));
+        assertFalse(WildcardPattern.compile("").matches("a"));
+    }
+
+    // the old matcher throws for a '?' past the end of the string, compares a trailing '?' literally and never matches
+    // the end of the string with two stars in a row, so only inputs where it does what it was meant to do are compared
+    private static boolean comparable(@NotNull final String pattern) {
+        return !pattern.endsWith("?") && !pattern.contains("**");
+    }
+
+    @Test
+    void agreesWithOldMatcher() {
+        final Random random = new Random(0x5eed);
+        final char[] patternChars = {'a', 'b', '*', '?'};
+        final char[] stringChars = {'a', 'b'};
+        int compared = 0;
+        for (int i = 0; i < 20000; i++) {
+            final StringBuilder pattern = new StringBuilder();
+            final int patternLength = random.nextInt(8);
+            for (int j = 0; j < patternLength; j++) pattern.append(patternChars[random.nextInt(patternChars.length)]);
+
+            final StringBuilder str = new StringBuilder();
+            final int length = 1 + random.nextInt(10);
+            for (int j = 0; j < length; j++) str.append(stringChars[random.nextInt(stringChars.length)]);
+
+            if (!comparable(pattern.toString())) continue;
+            final boolean expected;
+            try {
+                expected = oldMatchPattern(pattern.toString(), str.toString());
+            } catch (final StringIndexOutOfBoundsException e) {
+                continue;
+            }
+            assertEquals(expected, matches(pattern.toString(), str.toString()), () -> "pattern '" + pattern + "' against '" + str + "'");
+            compared++;
+        }
+        assertTrue(compared > 10000, "too few inputs were compared: " + compared);
+    }
+
+    @Test
+    void matchPatternUsesWildcardPattern() {
+        assertTrue(StringUtil.matchPattern("*_sword", "diamond_sword"));
+        assertFalse(StringUtil.matchPattern("*_sword", "diamond_pickaxe"));
+        assertEquals(oldMatchPattern("*_helmet", "leather_helmet"), StringUtil.matchPattern("*_helmet", "leather_helmet"));
+    }
+
+}